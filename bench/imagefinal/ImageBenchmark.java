@@ -0,0 +1,143 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rathbunfinal.Image;
+
+/**
+ * Throughput of each Image operation on the bundled photo and on synthetic
+ * 4K, 8K and 50 megapixel inputs. Run with -prof gc to see the allocation
+ * rate next to the throughput. Operations that give the same work on their
+ * own output reuse one image so that the copy does not show up in the
+ * allocation numbers. addFrame shrinks the image, and toGrayScale and
+ * cartoonify would only see pixels that are already gray or already palette
+ * colors the second time, so they get a fresh copy for every call.
+ *
+ * @author zach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ImageBenchmark {
+
+    @Param({"mosley", "4K", "8K", "50MP"})
+    public String size;
+
+    private BufferedImage source; // The untouched input.
+    private Image img;            // The image the in-place operations change.
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        switch (size)
+        {
+            case "mosley":
+                source = ImageIO.read(new File("mosley-bridge.jpg"));
+                break;
+            case "4K":
+                source = synthetic(3840, 2160);
+                break;
+            case "8K":
+                source = synthetic(7680, 4320);
+                break;
+            case "50MP":
+                source = synthetic(8660, 5774);
+                break;
+            default:
+                throw new IllegalArgumentException(size);
+        }
+
+        img = new Image(source);
+    }
+
+    @State(Scope.Thread)
+    public static class FreshCopy {
+
+        private Image img; // A new copy of the input for each call.
+
+        @Setup(Level.Invocation)
+        public void copySource(ImageBenchmark bench)
+        {
+            img = new Image(bench.source);
+        }
+    }
+
+    @Benchmark
+    public Image toGrayScale(FreshCopy copy)
+    {
+        copy.img.toGrayScale();
+        return copy.img;
+    }
+
+    @Benchmark
+    public Image negativeImage()
+    {
+        img.negativeImage();
+        return img;
+    }
+
+    @Benchmark
+    public boolean addFrame(FreshCopy copy) throws IOException
+    {
+        return copy.img.addFrame(new File("sparkle-overlay.png"));
+    }
+
+    @Benchmark
+    public boolean addSticker() throws IOException
+    {
+        return img.addSticker(new File("wow-sticker.png"));
+    }
+
+    @Benchmark
+    public Image cartoonify(FreshCopy copy) throws IOException
+    {
+        copy.img.cartoonify();
+        return copy.img;
+    }
+
+    /**
+     * Builds a photo-like test image: smooth gradients with some noise, so
+     * that it has many distinct colors.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The image.
+     */
+    static BufferedImage synthetic(int width, int height)
+    {
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        Random rand = new Random(42);
+
+        for (int j = 0; j < height; j++)
+            for (int i = 0; i < width; i++)
+            {
+                int r = (i * 255 / width + rand.nextInt(16)) & 0xFF;
+                int g = (j * 255 / height + rand.nextInt(16)) & 0xFF;
+                int b = ((i + j) * 255 / (width + height) + rand.nextInt(16)) & 0xFF;
+
+                image.setRGB(i, j, (r << 16) | (g << 8) | b);
+            }
+
+        return image;
+    }
+}
@@ -0,0 +1,78 @@
+package imagefinal;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rathbunfinal.PixelOperation;
+import rathbunfinal.PointOperations;
+
+/**
+ * Throughput of the point operation row kernels on one thread, in pixels per
+ * microsecond. Each pixel is 4 bytes, so bytes per cycle is 4 times the
+ * score divided by the clock speed in MHz. The buffer is the size of a 4K
+ * image so it does not fit in cache, like a real image.
+ *
+ * @author zach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+    private static final int PIXELS = 3840 * 2160;
+
+    private int[] pixels; // A 4K image worth of pixels.
+
+    @Setup
+    public void setUp()
+    {
+        Random rand = new Random(42);
+
+        pixels = new int[PIXELS];
+        for (int p = 0; p < PIXELS; p++)
+            pixels[p] = rand.nextInt() | 0xFF000000;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int[] grayscale()
+    {
+        PointOperations.GRAYSCALE.apply(pixels, 0, PIXELS);
+        return pixels;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int[] negative()
+    {
+        PointOperations.NEGATIVE.apply(pixels, 0, PIXELS);
+        return pixels;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int[] perPixel()
+    {
+        // The same negative through the one pixel at a time method, for
+        // comparison with the row kernel.
+        PixelOperation op = PointOperations.NEGATIVE;
+
+        for (int p = 0; p < PIXELS; p++)
+            pixels[p] = op.apply(pixels[p]);
+
+        return pixels;
+    }
+}
@@ -0,0 +1,60 @@
+package imagefinal;
+
+import java.io.FileNotFoundException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rathbunfinal.PixelColor;
+
+/**
+ * Throughput of the PixelColor helpers that cartoonify leans on.
+ *
+ * @author zach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelColorBenchmark {
+
+    private int[] colors;  // Random pixels to compare.
+    private int[] palette; // The crayola palette.
+    private int next;      // The index of the next pixel to use.
+
+    @Setup
+    public void setUp() throws FileNotFoundException
+    {
+        Random rand = new Random(42);
+
+        colors = new int[1024];
+        for (int n = 0; n < colors.length; n++)
+            colors[n] = rand.nextInt();
+
+        palette = PixelColor.getPalette();
+    }
+
+    @Benchmark
+    public double colorDistance()
+    {
+        int n = next++ & (colors.length - 1);
+
+        return PixelColor.colorDistance(colors[n], palette[n % palette.length]);
+    }
+
+    @Benchmark
+    public int[] getPalette() throws FileNotFoundException
+    {
+        return PixelColor.getPalette();
+    }
+}
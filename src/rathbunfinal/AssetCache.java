@@ -0,0 +1,186 @@
+package rathbunfinal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps files that are used over and over, like the palette and
+ * the frame and sticker images, in memory after they have been loaded once.
+ * An entry is only reused while the file's modification time is unchanged,
+ * and the least recently used entries are dropped once the cache holds more
+ * than its byte limit.
+ *
+ * @author Jared Rathbun
+ */
+public class AssetCache
+{
+    // The system property that sets the size of the shared cache in megabytes.
+    public static final String SIZE_PROPERTY = "rathbunfinal.assetcache.mb";
+
+    // The cache used by the Image operations.
+    private static final AssetCache shared =
+            new AssetCache(Long.getLong(SIZE_PROPERTY, 64) << 20);
+
+    // The entries, least recently used first.
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long maxBytes; // The most bytes the entries may take up.
+    private long bytes;          // The bytes the entries take up now.
+
+    /**
+     * Turns a file into the value that is cached for it.
+     *
+     * @param <T> The type of the cached value.
+     */
+    public interface Loader<T>
+    {
+        /**
+         * Loads the file.
+         *
+         * @param file The file to load.
+         * @return The value to cache.
+         * @throws IOException if the file cannot be read.
+         */
+        T load(File file) throws IOException;
+
+        /**
+         * Returns about how many bytes of memory a loaded value takes up.
+         *
+         * @param value A value returned by load.
+         * @return The size of the value in bytes.
+         */
+        long sizeOf(T value);
+    }
+
+    /**
+     * Builds an empty cache.
+     *
+     * @param maxBytes The most bytes the entries may take up.
+     */
+    public AssetCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * This method returns the cache shared by the whole program.
+     *
+     * @return The shared cache.
+     */
+    public static AssetCache getShared()
+    {
+        return shared;
+    }
+
+    /**
+     * This method returns the value for a file, loading it only if it is not
+     * cached or the file has changed since it was loaded. A value that is
+     * bigger than the whole cache is returned without being kept.
+     *
+     * @param <T> The type of the cached value.
+     * @param file The file to load.
+     * @param loader How to load the file. Each loader gets its own entries.
+     * @return The loaded value.
+     * @throws IOException if the file cannot be read.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(File file, Loader<T> loader) throws IOException
+    {
+        String key = loader.getClass().getName() + ":" + file.getAbsolutePath();
+        long modified = file.lastModified();
+
+        synchronized (this)
+        {
+            Entry entry = entries.get(key);
+
+            if (entry != null && entry.modified == modified)
+                return (T) entry.value;
+        }
+
+        // The file is loaded outside the lock so other files are not held up.
+        T value = loader.load(file);
+        long size = loader.sizeOf(value);
+
+        synchronized (this)
+        {
+            Entry old = entries.remove(key);
+
+            if (old != null)
+                bytes -= old.size;
+
+            if (size <= maxBytes)
+            {
+                entries.put(key, new Entry(value, modified, size));
+                bytes += size;
+                evict();
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * This method returns the number of bytes the entries take up.
+     *
+     * @return The size of the cache in bytes.
+     */
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * This method returns the number of entries in the cache.
+     *
+     * @return The number of entries.
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * This method empties the cache.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * This method drops the least recently used entries until the cache is
+     * back under its limit.
+     */
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+
+        while (bytes > maxBytes && it.hasNext())
+        {
+            bytes -= it.next().getValue().size;
+            it.remove();
+        }
+    }
+
+    /**
+     * A loaded value and the file state it was loaded from.
+     */
+    private static class Entry
+    {
+        private final Object value;
+        private final long modified;
+        private final long size;
+
+        Entry(Object value, long modified, long size)
+        {
+            this.value = value;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+}
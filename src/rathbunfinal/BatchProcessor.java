@@ -0,0 +1,466 @@
+package rathbunfinal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class runs the same operations over many images without a screen.
+ * Each image goes through three stages: decoding, processing and encoding.
+ * Every stage has its own threads, so the next image is read from disk while
+ * the current one is being processed and the last one is being written. The
+ * number of images in flight is capped, which also caps the memory used no
+ * matter how many files there are.
+ *
+ * @author Jared Rathbun
+ */
+public class BatchProcessor
+{
+    // The file types that are picked up when the input is a directory.
+    private static final String IMAGE_GLOB =
+            "*.{jpg,jpeg,png,gif,bmp,argb,JPG,JPEG,PNG,GIF,BMP,ARGB}";
+
+    private final Pipeline pipeline;  // The operations to run on each image.
+    private final File outputDir;     // Where the results are written.
+    private final ImageEncoder encoder; // Writes the results.
+    private final String format;      // The output extension, null to keep the input's.
+    private final int workers;        // The threads that run the pipeline.
+    private final int ioThreads;      // The threads that decode, and that encode.
+    private final int maxInFlight;    // The most images held in memory at once.
+
+    private final AtomicInteger processed = new AtomicInteger(); // Images written.
+    private final AtomicInteger failed = new AtomicInteger();    // Images skipped.
+    private final AtomicLong encodedBytes = new AtomicLong();    // Bytes written.
+    private final AtomicLong encodeNanos = new AtomicLong();     // Time spent encoding.
+
+    /**
+     * Builds a batch processor.
+     *
+     * @param pipeline The operations to run on each image.
+     * @param outputDir The directory the results are written to.
+     * @param workers The number of threads that run the pipeline.
+     */
+    public BatchProcessor(Pipeline pipeline, File outputDir, int workers)
+    {
+        this(pipeline, outputDir, workers, workers, 2 * workers);
+    }
+
+    /**
+     * Builds a batch processor.
+     *
+     * @param pipeline The operations to run on each image.
+     * @param outputDir The directory the results are written to.
+     * @param workers The number of threads that run the pipeline.
+     * @param ioThreads The number of threads that decode, and that encode.
+     * @param maxInFlight The most images held in memory at once.
+     */
+    public BatchProcessor(Pipeline pipeline, File outputDir, int workers,
+            int ioThreads, int maxInFlight)
+    {
+        this(pipeline, outputDir, workers, ioThreads, maxInFlight,
+                new ImageEncoder(), null);
+    }
+
+    /**
+     * Builds a batch processor.
+     *
+     * @param pipeline The operations to run on each image.
+     * @param outputDir The directory the results are written to.
+     * @param workers The number of threads that run the pipeline.
+     * @param ioThreads The number of threads that decode, and that encode.
+     * @param maxInFlight The most images held in memory at once.
+     * @param encoder Writes the results.
+     * @param format The extension of the results, like "png", or null to use
+     * the extension of each input.
+     */
+    public BatchProcessor(Pipeline pipeline, File outputDir, int workers,
+            int ioThreads, int maxInFlight, ImageEncoder encoder, String format)
+    {
+        assert (pipeline != null) && (outputDir != null) && (encoder != null);
+
+        if (workers < 1 || ioThreads < 1 || maxInFlight < 1)
+            throw new IllegalArgumentException("thread and image counts must be at least 1");
+
+        this.pipeline = pipeline;
+        this.outputDir = outputDir;
+        this.workers = workers;
+        this.ioThreads = ioThreads;
+        this.maxInFlight = maxInFlight;
+        this.encoder = encoder;
+        this.format = format;
+    }
+
+    /**
+     * This method runs a batch job described by the command line options.
+     *
+     * @param options The command line options and operations.
+     * @return The exit status, 0 if every image was processed.
+     * @throws IOException if the input or output cannot be opened.
+     * @throws InterruptedException if the job is interrupted.
+     */
+    public static int run(Options options) throws IOException, InterruptedException
+    {
+        String input = options.get("input", null);
+        String output = options.get("output", null);
+
+        if (input == null || output == null)
+        {
+            System.err.println("Batch mode needs --input and --output.");
+            return 2;
+        }
+
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        // Every worker already keeps a core busy, so the kernels run on one
+        // thread each unless told otherwise.
+        TileScheduler.setParallelism(options.getInt("threads", 1));
+
+        Pipeline pipeline = compile(options, fileOption(options, "frame"),
+                fileOption(options, "sticker"));
+
+        File outputDir = new File(output);
+        Files.createDirectories(outputDir.toPath());
+
+        int workers = options.getInt("workers", processors);
+        BatchProcessor batch = new BatchProcessor(pipeline, outputDir, workers,
+                options.getInt("io-threads", workers),
+                options.getInt("in-flight", 2 * workers),
+                ImageEncoder.fromOptions(options), options.get("format", null));
+        long start = System.nanoTime();
+
+        try (DirectoryStream<Path> inputs = openInputs(input))
+        {
+            batch.process(inputs);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Processed %d images (%d failed) in %.2f s, %.1f images/s%n",
+                batch.getProcessed(), batch.getFailed(), seconds,
+                batch.getProcessed() / seconds);
+        System.out.printf("Encoded %d bytes in %.2f s of encoder time%n",
+                batch.getEncodedBytes(), batch.getEncodeNanos() / 1e9);
+
+        return (batch.getFailed() == 0) ? 0 : 1;
+    }
+
+    /**
+     * This method builds the pipeline for the operations, with the frame and
+     * sticker taken from files instead of asked for. An image that the frame
+     * or sticker does not fit fails with an IOException.
+     *
+     * @param options The options and operations.
+     * @param frame The frame for "addframe", or null if none was given.
+     * @param sticker The sticker for "addsticker", or null if none was given.
+     * @return The pipeline.
+     * @throws IOException if the palette cannot be loaded.
+     */
+    static Pipeline compile(Options options, File frame, File sticker)
+            throws IOException
+    {
+        boolean blend = options.has("blend");
+
+        return Pipeline.compile(options,
+                img ->
+                {
+                    if (frame == null || img.addFrame(frame, blend) == false)
+                        throw new IOException("Frame is missing or too big");
+                },
+                img ->
+                {
+                    if (sticker == null || img.addSticker(sticker, blend) == false)
+                        throw new IOException("Sticker is missing or too big");
+                });
+    }
+
+    /**
+     * This method lists the images named by the input option. The input is
+     * either a directory, in which case every image in it is used, or a glob
+     * pattern like photos/*.jpg.
+     *
+     * @param input A directory or glob pattern.
+     * @return The matching files, listed lazily.
+     * @throws IOException if the directory cannot be opened.
+     */
+    public static DirectoryStream<Path> openInputs(String input) throws IOException
+    {
+        Path path = Paths.get(input);
+
+        if (Files.isDirectory(path))
+            return Files.newDirectoryStream(path, IMAGE_GLOB);
+
+        Path dir = (path.getParent() == null) ? Paths.get(".") : path.getParent();
+
+        return Files.newDirectoryStream(dir, path.getFileName().toString());
+    }
+
+    /**
+     * This method runs the pipeline over every input and waits for the work
+     * to finish. An image that cannot be read, processed or written is
+     * reported and skipped.
+     *
+     * @param inputs The images to process.
+     * @throws InterruptedException if the wait is interrupted.
+     */
+    public void process(Iterable<Path> inputs) throws InterruptedException
+    {
+        ExecutorService decoders = Executors.newFixedThreadPool(ioThreads,
+                namedThreads("decode"));
+        ExecutorService processors = Executors.newFixedThreadPool(workers,
+                namedThreads("process"));
+        ExecutorService encoders = Executors.newFixedThreadPool(ioThreads,
+                namedThreads("encode"));
+
+        // A permit is held from the time an image is read until it is written,
+        // so the stage queues can never hold more than maxInFlight images.
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        try
+        {
+            for (Path input : inputs)
+            {
+                if (Files.isRegularFile(input) == false)
+                    continue;
+
+                inFlight.acquire();
+                decoders.execute(() ->
+                {
+                    Image img = decode(input, inFlight);
+
+                    if (img != null)
+                        processors.execute(() ->
+                        {
+                            if (transform(input, img, inFlight))
+                                encoders.execute(() -> encode(input, img, inFlight));
+                        });
+                });
+            }
+
+            // Every permit is back once the last image has been written.
+            inFlight.acquire(maxInFlight);
+        } finally
+        {
+            decoders.shutdownNow();
+            processors.shutdownNow();
+            encoders.shutdownNow();
+            encoder.close();
+        }
+    }
+
+    /**
+     * This method reads one image, runs the pipeline on it and writes it to
+     * the output directory under the same name, all on the calling thread.
+     *
+     * @param input The image to process.
+     * @return The file that was written.
+     * @throws IOException if the image cannot be read or written.
+     */
+    public File processFile(Path input) throws IOException
+    {
+        Image img = new Image(input.toFile());
+        pipeline.run(img);
+
+        return write(input, img);
+    }
+
+    /**
+     * This method returns the number of images written so far.
+     *
+     * @return The number of images written.
+     */
+    public int getProcessed()
+    {
+        return processed.get();
+    }
+
+    /**
+     * This method returns the number of images that failed so far.
+     *
+     * @return The number of images that failed.
+     */
+    public int getFailed()
+    {
+        return failed.get();
+    }
+
+    /**
+     * This method returns the number of bytes written so far.
+     *
+     * @return The total size of the results.
+     */
+    public long getEncodedBytes()
+    {
+        return encodedBytes.get();
+    }
+
+    /**
+     * This method returns the time spent encoding so far, summed over the
+     * encode threads.
+     *
+     * @return The encoding time in nanoseconds.
+     */
+    public long getEncodeNanos()
+    {
+        return encodeNanos.get();
+    }
+
+    /**
+     * This method is the decode stage. A failure is reported and ends the
+     * image's trip through the stages.
+     *
+     * @param input The image to read.
+     * @param inFlight The permits for images in memory.
+     * @return The image, or null if it could not be read.
+     */
+    private Image decode(Path input, Semaphore inFlight)
+    {
+        try
+        {
+            return new Image(input.toFile());
+        } catch (IOException | RuntimeException ex)
+        {
+            fail(input, ex, inFlight);
+            return null;
+        } catch (Error err)
+        {
+            // The permit still goes back, or the batch would never finish.
+            fail(input, err, inFlight);
+            throw err;
+        }
+    }
+
+    /**
+     * This method is the process stage.
+     *
+     * @param input The file the image was read from.
+     * @param img The image to change.
+     * @param inFlight The permits for images in memory.
+     * @return True if the image should go on to be written.
+     */
+    private boolean transform(Path input, Image img, Semaphore inFlight)
+    {
+        try
+        {
+            pipeline.run(img);
+            return true;
+        } catch (IOException | RuntimeException ex)
+        {
+            fail(input, ex, inFlight);
+            return false;
+        } catch (Error err)
+        {
+            // The permit still goes back, or the batch would never finish.
+            fail(input, err, inFlight);
+            throw err;
+        }
+    }
+
+    /**
+     * This method is the encode stage. It always gives back the image's
+     * permit.
+     *
+     * @param input The file the image was read from.
+     * @param img The image to write.
+     * @param inFlight The permits for images in memory.
+     */
+    private void encode(Path input, Image img, Semaphore inFlight)
+    {
+        try
+        {
+            write(input, img);
+            processed.incrementAndGet();
+            inFlight.release();
+        } catch (IOException | RuntimeException ex)
+        {
+            fail(input, ex, inFlight);
+        } catch (Error err)
+        {
+            // The permit still goes back, or the batch would never finish.
+            fail(input, err, inFlight);
+            throw err;
+        }
+    }
+
+    /**
+     * This method writes an image to the output directory under the name of
+     * the file it was read from, with the extension changed if a format was
+     * given. The encoding time and size are reported.
+     *
+     * @param input The file the image was read from.
+     * @param img The image to write.
+     * @return The file that was written.
+     * @throws IOException if the image cannot be written.
+     */
+    private File write(Path input, Image img) throws IOException
+    {
+        String name = input.getFileName().toString();
+
+        // A name without an extension gets one.
+        if (format != null)
+            name = (name.lastIndexOf('.') < 0) ? name + "." + format
+                    : name.substring(0, name.lastIndexOf('.') + 1) + format;
+
+        File output = new File(outputDir, name);
+        ImageEncoder.Result result = encoder.write(img.getImage(), output);
+
+        encodedBytes.addAndGet(result.getBytes());
+        encodeNanos.addAndGet(result.getNanos());
+        System.out.println(output + ": " + result);
+
+        return output;
+    }
+
+    /**
+     * This method reports an image that failed and gives back its permit.
+     *
+     * @param input The file the image was read from.
+     * @param ex The reason it failed.
+     * @param inFlight The permits for images in memory.
+     */
+    private void fail(Path input, Throwable ex, Semaphore inFlight)
+    {
+        failed.incrementAndGet();
+        System.err.println(input + ": " + ex);
+        inFlight.release();
+    }
+
+    /**
+     * This method returns a factory for daemon threads named after a stage.
+     *
+     * @param stage The name of the stage.
+     * @return The thread factory.
+     */
+    static ThreadFactory namedThreads(String stage)
+    {
+        AtomicInteger count = new AtomicInteger();
+
+        return task ->
+        {
+            Thread t = new Thread(task, stage + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * This method returns the file named by an option, if it was given.
+     *
+     * @param options The command line options.
+     * @param name The name of the option.
+     * @return The file, or null if the option was not given.
+     */
+    static File fileOption(Options options, String name)
+    {
+        String value = options.get(name, null);
+
+        return (value == null) ? null : new File(value);
+    }
+}
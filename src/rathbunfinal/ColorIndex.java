@@ -0,0 +1,193 @@
+package rathbunfinal;
+
+import java.util.Arrays;
+
+/**
+ * A map from 24-bit RGB colors to ints, kept in two plain arrays with open
+ * addressing, so there is no boxing and no object per entry. It is used to
+ * find the different colors of an image, so each one only has to be matched
+ * to a palette once.
+ *
+ * @author Jared Rathbun
+ */
+public class ColorIndex
+{
+    // The key of an empty slot. Colors never have bits above the 24th set.
+    public static final int EMPTY = -1;
+
+    private int[] keys;    // The colors, or EMPTY.
+    private int[] values;  // The value of each color.
+    private int size;      // The number of colors in the map.
+    private int shift;     // 32 minus the log of the capacity.
+
+    /**
+     * Builds an empty map.
+     *
+     * @param expected About how many colors will be added.
+     */
+    public ColorIndex(int expected)
+    {
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(1, expected) * 2 - 1) * 2));
+    }
+
+    /**
+     * This method adds a color with a value of 0 if it is not in the map.
+     *
+     * @param rgb An RGB value, the alpha channel is ignored.
+     */
+    public void add(int rgb)
+    {
+        int key = rgb & 0xFFFFFF;
+        int slot = slotOf(key);
+
+        if (keys[slot] == key)
+            return;
+
+        keys[slot] = key;
+        values[slot] = 0;
+
+        // The table is kept at most half full so probes stay short.
+        if (++size * 2 > keys.length)
+            grow();
+    }
+
+    /**
+     * This method adds every color of another map to this one.
+     *
+     * @param other The other map.
+     */
+    public void addAll(ColorIndex other)
+    {
+        // The other map's colors come out in hash order. Putting them into a
+        // smaller table would pile them up into long runs of full slots, so
+        // this table is made at least as big first.
+        if (keys.length < other.keys.length)
+            rehash(other.keys.length);
+
+        for (int slot = 0; slot < other.keys.length; slot++)
+            if (other.keys[slot] != EMPTY)
+                add(other.keys[slot]);
+    }
+
+    /**
+     * This method returns the value of a color.
+     *
+     * @param rgb An RGB value, the alpha channel is ignored.
+     * @return The value, or 0 if the color is not in the map.
+     */
+    public int get(int rgb)
+    {
+        int key = rgb & 0xFFFFFF;
+        int slot = slotOf(key);
+
+        return (keys[slot] == key) ? values[slot] : 0;
+    }
+
+    /**
+     * This method returns the number of colors in the map.
+     *
+     * @return The number of colors.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * This method returns the number of slots, some of which are empty.
+     *
+     * @return The number of slots.
+     */
+    public int capacity()
+    {
+        return keys.length;
+    }
+
+    /**
+     * This method returns the color in a slot.
+     *
+     * @param slot A slot between 0 and capacity() - 1.
+     * @return The color, or EMPTY.
+     */
+    public int keyAt(int slot)
+    {
+        return keys[slot];
+    }
+
+    /**
+     * This method sets the value of the color in a slot. Different threads
+     * may set different slots at the same time.
+     *
+     * @param slot A slot that holds a color.
+     * @param value The new value.
+     */
+    public void setValueAt(int slot, int value)
+    {
+        assert (keys[slot] != EMPTY);
+
+        values[slot] = value;
+    }
+
+    /**
+     * This method returns the slot that holds the key, or the empty slot
+     * where it belongs.
+     *
+     * @param key A 24-bit color.
+     * @return The slot.
+     */
+    private int slotOf(int key)
+    {
+        int mask = keys.length - 1;
+        int slot = (key * 0x9E3779B9) >>> shift;
+
+        while (keys[slot] != EMPTY && keys[slot] != key)
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    /**
+     * This method doubles the number of slots and puts the colors back in.
+     */
+    private void grow()
+    {
+        rehash(2 * keys.length);
+    }
+
+    /**
+     * This method moves the colors into a table with the given number of
+     * slots.
+     *
+     * @param capacity The number of slots, a power of 2.
+     */
+    private void rehash(int capacity)
+    {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+
+        allocate(capacity);
+
+        for (int slot = 0; slot < oldKeys.length; slot++)
+            if (oldKeys[slot] != EMPTY)
+            {
+                int s = slotOf(oldKeys[slot]);
+                keys[s] = oldKeys[slot];
+                values[s] = oldValues[slot];
+                size++;
+            }
+    }
+
+    /**
+     * This method replaces the slots with empty ones.
+     *
+     * @param capacity The number of slots, a power of 2.
+     */
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity];
+        values = new int[capacity];
+        size = 0;
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        Arrays.fill(keys, EMPTY);
+    }
+}
@@ -0,0 +1,20 @@
+package rathbunfinal;
+
+/**
+ * A way of placing colors in a space where the straight line distance between
+ * two colors tells how different they look. Palette colors are placed once
+ * and kept, so only the pixel side has to be converted when matching.
+ *
+ * @author Jared Rathbun
+ */
+public interface ColorMetric
+{
+    /**
+     * Places a color in the metric's space.
+     *
+     * @param rgb An RGB value, the alpha channel is ignored.
+     * @param coords An array of at least 3 elements that the coordinates of
+     * the color are written to.
+     */
+    void toCoordinates(int rgb, double[] coords);
+}
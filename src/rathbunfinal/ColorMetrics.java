@@ -0,0 +1,107 @@
+package rathbunfinal;
+
+/**
+ * The color metrics that can be used to match pixels to a palette.
+ *
+ * @author Jared Rathbun
+ */
+public class ColorMetrics
+{
+    /**
+     * The HSV cone used by PixelColor.colorDistance. Hue and saturation are
+     * turned into a point on a circle whose radius shrinks with the value.
+     */
+    public static final ColorMetric HSV_CONE = new HsvCone();
+
+    /**
+     * The CIELAB color space, where the distance is the CIE76 delta E.
+     */
+    public static final ColorMetric CIELAB = new Lab();
+
+    // sRGB channel values turned into linear light, computed once.
+    private static final double[] LINEAR = new double[256];
+
+    static
+    {
+        for (int c = 0; c < 256; c++)
+        {
+            double v = c / 255.0;
+            LINEAR[c] = (v <= 0.04045) ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    /**
+     * This class only holds constants and static methods.
+     */
+    private ColorMetrics()
+    {
+    }
+
+    /**
+     * This method returns the metric with the given name.
+     *
+     * @param name Either "hsv" or "lab".
+     * @return The metric.
+     * @throws IllegalArgumentException if there is no metric by that name.
+     */
+    public static ColorMetric forName(String name)
+    {
+        switch (name)
+        {
+            case "hsv":
+                return HSV_CONE;
+            case "lab":
+                return CIELAB;
+            default:
+                throw new IllegalArgumentException("Unknown color metric: " + name);
+        }
+    }
+
+    /**
+     * The HSV cone. The math is the same as PixelColor.colorDistance, step for
+     * step, so distances come out exactly the same.
+     */
+    private static final class HsvCone implements ColorMetric
+    {
+        @Override
+        public void toCoordinates(int rgb, double[] coords)
+        {
+            double[] hsv = PixelColor.toHSV(rgb);
+
+            coords[0] = Math.sin(Math.toRadians(hsv[0])) * hsv[1] * hsv[2];
+            coords[1] = Math.cos(Math.toRadians(hsv[0])) * hsv[1] * hsv[2];
+            coords[2] = hsv[2];
+        }
+    }
+
+    /**
+     * CIELAB with the D65 white point.
+     */
+    private static final class Lab implements ColorMetric
+    {
+        @Override
+        public void toCoordinates(int rgb, double[] coords)
+        {
+            double r = LINEAR[PixelColor.getRedChannel(rgb)];
+            double g = LINEAR[PixelColor.getGreenChannel(rgb)];
+            double b = LINEAR[PixelColor.getBlueChannel(rgb)];
+
+            // Linear sRGB to XYZ, scaled by the D65 white point.
+            double x = f((0.4124 * r + 0.3576 * g + 0.1805 * b) / 0.95047);
+            double y = f(0.2126 * r + 0.7152 * g + 0.0722 * b);
+            double z = f((0.0193 * r + 0.1192 * g + 0.9505 * b) / 1.08883);
+
+            coords[0] = 116 * y - 16;
+            coords[1] = 500 * (x - y);
+            coords[2] = 200 * (y - z);
+        }
+
+        /**
+         * The CIELAB companding function.
+         */
+        private static double f(double t)
+        {
+            return (t > 216.0 / 24389) ? Math.cbrt(t) : (24389.0 / 27 * t + 16) / 116;
+        }
+    }
+}
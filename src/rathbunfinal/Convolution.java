@@ -0,0 +1,500 @@
+package rathbunfinal;
+
+import java.util.Arrays;
+
+/**
+ * This class runs separable filters over packed ARGB pixels: box and
+ * Gaussian blurs, unsharp masking and Sobel edges. Each filter is split into
+ * a pass across the rows and a pass down the columns. The image is cut into
+ * bands of rows that run in parallel, and each band also blurs the few rows
+ * above and below it that its columns reach into, its halo, so bands never
+ * wait on each other. Pixels past the edges of the image are taken to be
+ * copies of the nearest edge pixel, so the halo only holds rows that are in
+ * the image and a band is never taller than the image, whatever the radius.
+ *
+ * The box blur keeps running sums as it slides along a row or down the
+ * columns, so it costs the same per pixel whatever its radius. The Gaussian
+ * blur uses integer weights that add up to 2^14.
+ *
+ * @author Jared Rathbun
+ */
+public class Convolution
+{
+    // The weights of a kernel add up to 1 << SHIFT.
+    private static final int SHIFT = 14;
+
+    /**
+     * This class only holds static methods.
+     */
+    private Convolution()
+    {
+    }
+
+    /**
+     * This method blurs each pixel with the average of the square around it.
+     *
+     * @param src The pixels, row by row.
+     * @param dst Where the blurred pixels go, not the same array as src.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param radius How far the square reaches from the pixel, at least 0.
+     */
+    public static void boxBlur(int[] src, int[] dst, int width, int height, int radius)
+    {
+        if (radius < 0)
+            throw new IllegalArgumentException("radius must be at least 0");
+
+        separable(src, dst, width, height, radius, null);
+    }
+
+    /**
+     * This method blurs each pixel with a Gaussian weighted average of the
+     * pixels around it, reaching out three standard deviations.
+     *
+     * @param src The pixels, row by row.
+     * @param dst Where the blurred pixels go, not the same array as src.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param sigma The standard deviation of the Gaussian, in pixels.
+     */
+    public static void gaussianBlur(int[] src, int[] dst, int width, int height,
+            double sigma)
+    {
+        if (!(sigma > 0))
+            throw new IllegalArgumentException("sigma must be more than 0");
+
+        int[] weights = gaussian(sigma);
+
+        separable(src, dst, width, height, weights.length / 2, weights);
+    }
+
+    /**
+     * This method sharpens the image with an unsharp mask: the difference
+     * between each pixel and a Gaussian blur of it is added back on.
+     *
+     * @param src The pixels, row by row.
+     * @param dst Where the sharpened pixels go, not the same array as src.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param sigma The standard deviation of the blur, in pixels.
+     * @param amount How much of the difference is added, 1 to add all of it.
+     */
+    public static void sharpen(int[] src, int[] dst, int width, int height,
+            double sigma, double amount)
+    {
+        gaussianBlur(src, dst, width, height, sigma);
+
+        int gain = (int) Math.round(amount * (1 << SHIFT));
+
+        TileScheduler.getDefault().forEachBand(height, (first, last) ->
+        {
+            for (int p = first * width; p < last * width; p++)
+            {
+                int s = src[p];
+                int b = dst[p];
+
+                // The alpha channel is not sharpened.
+                dst[p] = (s & 0xFF000000) | (unsharp(s >> 16, b >> 16, gain) << 16)
+                        | (unsharp(s >> 8, b >> 8, gain) << 8) | unsharp(s, b, gain);
+            }
+        });
+    }
+
+    /**
+     * This method finds how strong the edge through each pixel is with the
+     * Sobel operator on the pixels' brightness.
+     *
+     * @param src The pixels, row by row.
+     * @param magnitude Where the strength of each edge goes, from 0 to 255.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     */
+    public static void sobel(int[] src, int[] magnitude, int width, int height)
+    {
+        TileScheduler.getDefault().forEachBand(height, (first, last) ->
+        {
+            int rows = last - first + 2;
+            int[] smooth = new int[rows * width];  // 1 2 1 across each row.
+            int[] slope = new int[rows * width];   // -1 0 1 across each row.
+
+            for (int b = 0; b < rows; b++)
+            {
+                int in = clamp(first - 1 + b, height) * width;
+                int out = b * width;
+
+                for (int i = 0; i < width; i++)
+                {
+                    int left = luma(src[in + Math.max(i - 1, 0)]);
+                    int right = luma(src[in + Math.min(i + 1, width - 1)]);
+
+                    smooth[out + i] = left + 2 * luma(src[in + i]) + right;
+                    slope[out + i] = right - left;
+                }
+            }
+
+            // Down the columns the kernels swap: the slope across is smoothed
+            // and the smooth rows are differenced.
+            for (int j = first; j < last; j++)
+            {
+                int above = (j - first) * width;
+                int row = above + width;
+                int below = row + width;
+
+                for (int i = 0; i < width; i++)
+                {
+                    int gx = slope[above + i] + 2 * slope[row + i] + slope[below + i];
+                    int gy = smooth[below + i] - smooth[above + i];
+
+                    magnitude[j * width + i] = Math.min(255,
+                            (int) Math.sqrt(gx * gx + gy * gy) >> 2);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method runs a separable filter, one band of rows at a time.
+     *
+     * @param src The pixels, row by row.
+     * @param dst Where the filtered pixels go.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param radius How far the filter reaches from each pixel.
+     * @param weights The 2 * radius + 1 weights, or null for a box.
+     */
+    private static void separable(int[] src, int[] dst, int width, int height,
+            int radius, int[] weights)
+    {
+        TileScheduler.getDefault().forEachBand(height, (first, last) ->
+        {
+            // The band's rows and its halo, filtered across. Rows past the
+            // edges are the edge rows again, so they are not kept twice.
+            int top = Math.max(0, first - radius);
+            int rows = (int) Math.min(height, (long) last + radius) - top;
+            int[] band = new int[rows * width];
+
+            for (int b = 0; b < rows; b++)
+            {
+                int in = (top + b) * width;
+
+                if (weights == null)
+                    boxRow(src, in, band, b * width, width, radius);
+                else
+                    kernelRow(src, in, band, b * width, width, weights);
+            }
+
+            if (weights == null)
+                boxColumns(band, top, dst, first, last, width, height, radius);
+            else
+                kernelColumns(band, top, dst, first, last, width, height, weights);
+        });
+    }
+
+    /**
+     * This method box blurs one row across, sliding a running sum along it.
+     *
+     * @param src The pixels.
+     * @param in The first pixel of the row.
+     * @param out Where the row goes.
+     * @param at The first pixel of the row in out.
+     * @param width The width of the row.
+     * @param radius The radius of the box.
+     */
+    private static void boxRow(int[] src, int in, int[] out, int at, int width, int radius)
+    {
+        int n = 2 * radius + 1;
+        int a = 0;
+        int r = 0;
+        int g = 0;
+        int b = 0;
+
+        for (int k = -radius; k <= radius; k++)
+        {
+            int p = src[in + clamp(k, width)];
+
+            a += p >>> 24;
+            r += (p >> 16) & 0xFF;
+            g += (p >> 8) & 0xFF;
+            b += p & 0xFF;
+        }
+
+        for (int i = 0; i < width; i++)
+        {
+            out[at + i] = pack(a, r, g, b, n);
+
+            int add = src[in + Math.min(i + radius + 1, width - 1)];
+            int sub = src[in + Math.max(i - radius, 0)];
+
+            a += (add >>> 24) - (sub >>> 24);
+            r += ((add >> 16) & 0xFF) - ((sub >> 16) & 0xFF);
+            g += ((add >> 8) & 0xFF) - ((sub >> 8) & 0xFF);
+            b += (add & 0xFF) - (sub & 0xFF);
+        }
+    }
+
+    /**
+     * This method box blurs a band down its columns, keeping a running sum
+     * for every column as it slides down.
+     *
+     * @param band The band's rows and halo, already blurred across.
+     * @param top The row of the image the band starts at.
+     * @param dst Where the band's rows go.
+     * @param first The first row of the band.
+     * @param last One past the last row of the band.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param radius The radius of the box.
+     */
+    private static void boxColumns(int[] band, int top, int[] dst, int first, int last,
+            int width, int height, int radius)
+    {
+        int n = 2 * radius + 1;
+        int[] a = new int[width];
+        int[] r = new int[width];
+        int[] g = new int[width];
+        int[] b = new int[width];
+
+        for (int t = 0; t < n; t++)
+            for (int i = 0, p = bandRow(first - radius + t, top, width, height);
+                    i < width; i++, p++)
+            {
+                a[i] += band[p] >>> 24;
+                r[i] += (band[p] >> 16) & 0xFF;
+                g[i] += (band[p] >> 8) & 0xFF;
+                b[i] += band[p] & 0xFF;
+            }
+
+        for (int j = first; j < last; j++)
+        {
+            int out = j * width;
+
+            for (int i = 0; i < width; i++)
+                dst[out + i] = pack(a[i], r[i], g[i], b[i], n);
+
+            if (j + 1 == last)
+                break;
+
+            // The row below the window comes in and the top row goes out.
+            int add = bandRow(j + radius + 1, top, width, height);
+            int sub = bandRow(j - radius, top, width, height);
+
+            for (int i = 0; i < width; i++)
+            {
+                int in = band[add + i];
+                int outgoing = band[sub + i];
+
+                a[i] += (in >>> 24) - (outgoing >>> 24);
+                r[i] += ((in >> 16) & 0xFF) - ((outgoing >> 16) & 0xFF);
+                g[i] += ((in >> 8) & 0xFF) - ((outgoing >> 8) & 0xFF);
+                b[i] += (in & 0xFF) - (outgoing & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * This method filters one row across with a kernel.
+     *
+     * @param src The pixels.
+     * @param in The first pixel of the row.
+     * @param out Where the row goes.
+     * @param at The first pixel of the row in out.
+     * @param width The width of the row.
+     * @param weights The weights of the kernel.
+     */
+    private static void kernelRow(int[] src, int in, int[] out, int at, int width,
+            int[] weights)
+    {
+        int radius = weights.length / 2;
+
+        for (int i = 0; i < width; i++)
+        {
+            int a = 0;
+            int r = 0;
+            int g = 0;
+            int b = 0;
+
+            for (int k = 0; k < weights.length; k++)
+            {
+                int p = src[in + clamp(i - radius + k, width)];
+                int w = weights[k];
+
+                a += w * (p >>> 24);
+                r += w * ((p >> 16) & 0xFF);
+                g += w * ((p >> 8) & 0xFF);
+                b += w * (p & 0xFF);
+            }
+
+            out[at + i] = packWeighted(a, r, g, b);
+        }
+    }
+
+    /**
+     * This method filters a band down its columns with a kernel, adding up
+     * whole rows at a time so the pixels are read in order.
+     *
+     * @param band The band's rows and halo, already filtered across.
+     * @param top The row of the image the band starts at.
+     * @param dst Where the band's rows go.
+     * @param first The first row of the band.
+     * @param last One past the last row of the band.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param weights The weights of the kernel.
+     */
+    private static void kernelColumns(int[] band, int top, int[] dst, int first,
+            int last, int width, int height, int[] weights)
+    {
+        int radius = weights.length / 2;
+
+        int[] a = new int[width];
+        int[] r = new int[width];
+        int[] g = new int[width];
+        int[] b = new int[width];
+
+        for (int j = first; j < last; j++)
+        {
+            Arrays.fill(a, 0);
+            Arrays.fill(r, 0);
+            Arrays.fill(g, 0);
+            Arrays.fill(b, 0);
+
+            for (int k = 0; k < weights.length; k++)
+            {
+                int w = weights[k];
+
+                for (int i = 0, p = bandRow(j - radius + k, top, width, height);
+                        i < width; i++, p++)
+                {
+                    a[i] += w * (band[p] >>> 24);
+                    r[i] += w * ((band[p] >> 16) & 0xFF);
+                    g[i] += w * ((band[p] >> 8) & 0xFF);
+                    b[i] += w * (band[p] & 0xFF);
+                }
+            }
+
+            for (int i = 0, p = j * width; i < width; i++, p++)
+                dst[p] = packWeighted(a[i], r[i], g[i], b[i]);
+        }
+    }
+
+    /**
+     * This method finds where a row of the image is kept in a band, taking
+     * rows past the edges to be the edge rows.
+     *
+     * @param row The row of the image, which may be past its edges.
+     * @param top The row of the image the band starts at.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The index of the row's first pixel in the band.
+     */
+    private static int bandRow(int row, int top, int width, int height)
+    {
+        return (clamp(row, height) - top) * width;
+    }
+
+    /**
+     * This method makes the integer weights of a Gaussian kernel.
+     *
+     * @param sigma The standard deviation, in pixels.
+     * @return The 2 * radius + 1 weights, adding up to 1 << SHIFT.
+     */
+    private static int[] gaussian(double sigma)
+    {
+        int radius = Math.max(1, (int) Math.ceil(3 * sigma));
+        int[] weights = new int[2 * radius + 1];
+        double[] exact = new double[weights.length];
+        double total = 0;
+
+        for (int k = 0; k < exact.length; k++)
+        {
+            double x = k - radius;
+
+            exact[k] = Math.exp(-x * x / (2 * sigma * sigma));
+            total += exact[k];
+        }
+
+        int sum = 0;
+
+        for (int k = 0; k < weights.length; k++)
+        {
+            weights[k] = (int) Math.round(exact[k] / total * (1 << SHIFT));
+            sum += weights[k];
+        }
+
+        // Rounding is made up in the middle, so flat areas stay the same.
+        weights[radius] += (1 << SHIFT) - sum;
+
+        return weights;
+    }
+
+    /**
+     * This method adds the difference between a channel and its blur back
+     * onto the channel.
+     *
+     * @param s The channel, in the low 8 bits.
+     * @param b The blurred channel, in the low 8 bits.
+     * @param gain How much of the difference is added, in 2^-14ths.
+     * @return The sharpened channel, from 0 to 255.
+     */
+    private static int unsharp(int s, int b, int gain)
+    {
+        s &= 0xFF;
+        b &= 0xFF;
+
+        int value = s + ((gain * (s - b) + (1 << (SHIFT - 1))) >> SHIFT);
+
+        return Math.max(0, Math.min(255, value));
+    }
+
+    /**
+     * This method packs the sums of n pixels' channels into their average.
+     *
+     * @return The average pixel.
+     */
+    private static int pack(int a, int r, int g, int b, int n)
+    {
+        int half = n / 2;
+
+        return ((a + half) / n << 24) | ((r + half) / n << 16)
+                | ((g + half) / n << 8) | ((b + half) / n);
+    }
+
+    /**
+     * This method packs channels weighted by a kernel into a pixel.
+     *
+     * @return The pixel.
+     */
+    private static int packWeighted(int a, int r, int g, int b)
+    {
+        int half = 1 << (SHIFT - 1);
+
+        return (Math.min(255, (a + half) >> SHIFT) << 24)
+                | (Math.min(255, (r + half) >> SHIFT) << 16)
+                | (Math.min(255, (g + half) >> SHIFT) << 8)
+                | Math.min(255, (b + half) >> SHIFT);
+    }
+
+    /**
+     * This method returns the brightness of a pixel.
+     *
+     * @param rgb The pixel.
+     * @return The brightness, from 0 to 255.
+     */
+    private static int luma(int rgb)
+    {
+        return (77 * ((rgb >> 16) & 0xFF) + 150 * ((rgb >> 8) & 0xFF)
+                + 29 * (rgb & 0xFF) + 128) >> 8;
+    }
+
+    /**
+     * This method keeps an index inside a row or column.
+     *
+     * @param index The index, which may be past either end.
+     * @param size The length of the row or column.
+     * @return The nearest index inside it.
+     */
+    private static int clamp(int index, int size)
+    {
+        return Math.max(0, Math.min(size - 1, index));
+    }
+}
@@ -68,32 +68,20 @@ public class Display extends WindowAdapter {
     /**
      * This method scales an image to fit on 80% of the screen dimensions if the
      * image is bigger than 80% of the screen dimensions; otherwise the original
-     * image is returned.
+     * image is returned. The aspect ratio of the image is kept.
      *
      * @param img this is the image to scale.
      */
-    private static java.awt.Image scaleImage(BufferedImage img)
+    private static BufferedImage scaleImage(BufferedImage img)
     {
         // Get the dimensions of the screen.
         Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 
-        // Get 80% of the screen height and width. Thus preserving the 
-        // aspect ratio of the monitor.
-        double width = screenSize.getWidth() * 0.8;
-        double height = screenSize.getHeight() * 0.8;
+        // Get 80% of the screen height and width.
+        int width = (int) (screenSize.getWidth() * 0.8);
+        int height = (int) (screenSize.getHeight() * 0.8);
 
-        // Don't allow upscaling.
-        if (img.getWidth() < (int) width)
-        {
-            width = img.getWidth();
-        }
-        if (img.getHeight() < (int) height)
-        {
-            height = img.getHeight();
-        }
-
-        // Scale the image so it fits nicely on the screen.
-        return img.getScaledInstance((int) width, (int) height,
-                java.awt.Image.SCALE_SMOOTH);
+        // Scale the image so it fits nicely on the screen, never upscaling.
+        return Preview.scale(img, width, height);
     }
 }
@@ -0,0 +1,337 @@
+package rathbunfinal;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The ways cartoonify can spread out the difference between a pixel and the
+ * palette color it is matched to, so smooth gradients come out as a mix of
+ * nearby palette colors instead of flat bands.
+ *
+ * Ordered dithering nudges each pixel by a threshold from an 8x8 Bayer
+ * matrix before matching it. Every pixel is done on its own, so the rows are
+ * split into bands like any other operation.
+ *
+ * Floyd-Steinberg error diffusion hands each pixel's error on to the pixel to
+ * its right and the three below it, so a row cannot be finished before the
+ * row above it. The rows are still done in parallel as a wavefront: each row
+ * follows a little behind the row above it, which only has to be two pixels
+ * ahead. The result is the same as doing the rows one at a time.
+ *
+ * @author Jared Rathbun
+ */
+public enum Dither
+{
+    /**
+     * Each pixel is matched to the palette as it is.
+     */
+    NONE,
+
+    /**
+     * Each pixel is nudged by a Bayer matrix threshold before it is matched.
+     */
+    ORDERED,
+
+    /**
+     * Each pixel's error is spread to its neighbors with Floyd-Steinberg
+     * weights.
+     */
+    FLOYD_STEINBERG;
+
+    // The Bayer matrix, with the 64 thresholds 0 to 63 laid out so that
+    // neighboring thresholds are as far apart as they can be.
+    private static final int[] BAYER = bayer(8);
+
+    // The pixels a row does before telling the row below how far it is.
+    private static final int CHUNK = 64;
+
+    // The times a row checks on the row above before giving up its thread.
+    private static final int SPIN_LIMIT = 256;
+
+    /**
+     * This method returns the dithering with the given name: none, ordered
+     * (or bayer) or floyd-steinberg (or fs).
+     *
+     * @param name The name.
+     * @return The dithering.
+     * @throws IllegalArgumentException if the name is unknown.
+     */
+    public static Dither forName(String name)
+    {
+        switch (name.toLowerCase(Locale.ROOT))
+        {
+            case "none":
+                return NONE;
+            case "ordered":
+            case "bayer":
+                return ORDERED;
+            case "floyd-steinberg":
+            case "fs":
+                return FLOYD_STEINBERG;
+            default:
+                throw new IllegalArgumentException("Unknown dithering: " + name);
+        }
+    }
+
+    /**
+     * This method replaces each pixel with a palette color, dithered. The
+     * pixels are left with the palette's colors, which have no alpha channel.
+     *
+     * @param pixels The pixels, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param palette The palette.
+     */
+    public void apply(int[] pixels, int width, int height, PaletteMap palette)
+    {
+        switch (this)
+        {
+            case ORDERED:
+                ordered(pixels, width, height, palette);
+                break;
+            case FLOYD_STEINBERG:
+                floydSteinberg(pixels, width, height, palette);
+                break;
+            default:
+                TileScheduler.getDefault().forEachBand(height, (first, last) ->
+                {
+                    for (int p = first * width; p < last * width; p++)
+                        pixels[p] = palette.nearestColor(pixels[p]);
+                });
+        }
+    }
+
+    /**
+     * This method dithers with the Bayer matrix. The thresholds cover about
+     * the distance between neighboring palette colors, which is taken to be
+     * the distance between the levels of an even grid of the same number of
+     * colors.
+     *
+     * @param pixels The pixels, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param palette The palette.
+     */
+    private static void ordered(int[] pixels, int width, int height, PaletteMap palette)
+    {
+        double spread = Math.min(255, 255 / (Math.cbrt(palette.getPalette().length) - 1));
+        int[] offsets = new int[BAYER.length];
+
+        for (int k = 0; k < BAYER.length; k++)
+            offsets[k] = (int) Math.round(((BAYER[k] + 0.5) / BAYER.length - 0.5) * spread);
+
+        TileScheduler.getDefault().forEachBand(height, (first, last) ->
+        {
+            for (int j = first; j < last; j++)
+            {
+                int row = (j & 7) * 8;
+
+                for (int i = 0, p = j * width; i < width; i++, p++)
+                {
+                    int o = offsets[row + (i & 7)];
+                    int rgb = pixels[p];
+
+                    pixels[p] = palette.nearestColor(
+                            (clamp(((rgb >> 16) & 0xFF) + o) << 16)
+                            | (clamp(((rgb >> 8) & 0xFF) + o) << 8)
+                            | clamp((rgb & 0xFF) + o));
+                }
+            }
+        });
+    }
+
+    /**
+     * This method dithers with Floyd-Steinberg error diffusion. Errors are
+     * kept in 16ths of a level for the pixel to the right, and in 256ths of a
+     * level in the two rows of errors for the row below: the one being read
+     * and the one being written. A row clears the errors it reads, so the
+     * same two rows of errors are used over and over.
+     *
+     * @param pixels The pixels, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param palette The palette.
+     */
+    private static void floydSteinberg(int[] pixels, int width, int height,
+            PaletteMap palette)
+    {
+        int[][] errors = new int[2][3 * (width + 2)]; // One pixel of padding each side.
+        AtomicIntegerArray done = new AtomicIntegerArray(height); // Pixels done in each row.
+
+        TileScheduler.getDefault().forEachRowInOrder(height, (first, last) ->
+        {
+            for (int j = first; j < last; j++)
+            {
+                try
+                {
+                    diffuseRow(pixels, width, j, palette, errors[j & 1],
+                            errors[(j + 1) & 1], done);
+                } finally
+                {
+                    // Rows below never wait on a row that failed.
+                    done.set(j, Integer.MAX_VALUE);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method dithers one row with Floyd-Steinberg error diffusion.
+     *
+     * @param pixels The pixels, row by row.
+     * @param width The width of the image.
+     * @param j The row.
+     * @param palette The palette.
+     * @param in The errors handed down to this row, which are cleared.
+     * @param out The errors handed down to the next row.
+     * @param done The number of pixels done in each row.
+     */
+    private static void diffuseRow(int[] pixels, int width, int j, PaletteMap palette,
+            int[] in, int[] out, AtomicIntegerArray done)
+    {
+        int carryRed = 0;   // The errors handed right, in 16ths.
+        int carryGreen = 0;
+        int carryBlue = 0;
+
+        for (int start = 0; start < width; start += CHUNK)
+        {
+            int end = Math.min(width, start + CHUNK);
+
+            // The row above must be done with every pixel that hands this
+            // chunk an error, which reaches one pixel past the chunk.
+            if (j > 0)
+                awaitRow(done, j - 1, Math.min(width, end + 1));
+
+            // The padding is never read, so it is cleared before the row
+            // below can start adding to it again.
+            if (start == 0)
+                clearPixel(in, 0);
+
+            for (int i = start, p = j * width + start; i < end; i++, p++)
+            {
+                int e = 3 * (i + 1); // The pixel's errors, past the padding.
+                int rgb = pixels[p];
+
+                int red = clamp16(16 * ((rgb >> 16) & 0xFF) + carryRed
+                        + ((in[e] + 8) >> 4));
+                int green = clamp16(16 * ((rgb >> 8) & 0xFF) + carryGreen
+                        + ((in[e + 1] + 8) >> 4));
+                int blue = clamp16(16 * (rgb & 0xFF) + carryBlue
+                        + ((in[e + 2] + 8) >> 4));
+
+                in[e] = 0;
+                in[e + 1] = 0;
+                in[e + 2] = 0;
+
+                int color = palette.nearestColor((((red + 8) >> 4) << 16)
+                        | (((green + 8) >> 4) << 8) | ((blue + 8) >> 4));
+                pixels[p] = color;
+
+                int errRed = red - 16 * ((color >> 16) & 0xFF);
+                int errGreen = green - 16 * ((color >> 8) & 0xFF);
+                int errBlue = blue - 16 * (color & 0xFF);
+
+                carryRed = (7 * errRed) / 16;
+                carryGreen = (7 * errGreen) / 16;
+                carryBlue = (7 * errBlue) / 16;
+
+                // Below left, below and below right get 3, 5 and 1 16ths.
+                out[e - 3] += 3 * errRed;
+                out[e - 2] += 3 * errGreen;
+                out[e - 1] += 3 * errBlue;
+                out[e] += 5 * errRed;
+                out[e + 1] += 5 * errGreen;
+                out[e + 2] += 5 * errBlue;
+                out[e + 3] += errRed;
+                out[e + 4] += errGreen;
+                out[e + 5] += errBlue;
+            }
+
+            if (end == width)
+                clearPixel(in, width + 1);
+
+            done.set(j, end);
+        }
+    }
+
+    /**
+     * This method clears the errors of one pixel.
+     *
+     * @param errors A row of errors.
+     * @param slot The pixel, counting the padding.
+     */
+    private static void clearPixel(int[] errors, int slot)
+    {
+        errors[3 * slot] = 0;
+        errors[3 * slot + 1] = 0;
+        errors[3 * slot + 2] = 0;
+    }
+
+    /**
+     * This method waits until a row has done enough pixels.
+     *
+     * @param done The number of pixels done in each row.
+     * @param row The row waited on.
+     * @param pixels The number of pixels it must have done.
+     */
+    private static void awaitRow(AtomicIntegerArray done, int row, int pixels)
+    {
+        for (int spins = 0; done.get(row) < pixels; spins++)
+        {
+            if (spins < SPIN_LIMIT)
+                Thread.onSpinWait();
+            else
+                Thread.yield();
+        }
+    }
+
+    /**
+     * This method keeps a channel between 0 and 255.
+     */
+    private static int clamp(int value)
+    {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    /**
+     * This method keeps a channel, in 16ths of a level, between 0 and 255.
+     */
+    private static int clamp16(int value)
+    {
+        return Math.max(0, Math.min(16 * 255, value));
+    }
+
+    /**
+     * This method builds a Bayer matrix by doubling the 2x2 matrix.
+     *
+     * @param size The width of the matrix, a power of 2.
+     * @return The thresholds from 0 to size * size - 1, row by row.
+     */
+    private static int[] bayer(int size)
+    {
+        int[] matrix = {0};
+
+        for (int n = 1; n < size; n *= 2)
+        {
+            int[] bigger = new int[4 * n * n];
+
+            // Each threshold becomes a 2x2 block. The top left keeps it and
+            // the bottom right, top right and bottom left add 1, 2 and 3
+            // times the old size, so neighbors are always far apart.
+            for (int y = 0; y < n; y++)
+                for (int x = 0; x < n; x++)
+                {
+                    int t = matrix[y * n + x];
+
+                    bigger[(2 * y) * 2 * n + 2 * x] = t;
+                    bigger[(2 * y + 1) * 2 * n + 2 * x + 1] = t + n * n;
+                    bigger[(2 * y) * 2 * n + 2 * x + 1] = t + 2 * n * n;
+                    bigger[(2 * y + 1) * 2 * n + 2 * x] = t + 3 * n * n;
+                }
+
+            matrix = bigger;
+        }
+
+        return matrix;
+    }
+}
@@ -0,0 +1,277 @@
+package rathbunfinal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class holds the operations of an editing session, in an order the user
+ * can change, each of which can be switched off. The operations are run on a
+ * small proxy of the image, and the result after each one is kept, so a
+ * change only reruns the operations from the one that changed onwards. The
+ * full sized image is only made when it is saved.
+ *
+ * The chain can be changed while it is being rendered on another thread. A
+ * result is only kept if the operation and the image it started from are
+ * still the same when it is done.
+ *
+ * @author Jared Rathbun
+ */
+public class EditChain
+{
+    private final Image proxy;                            // The image being edited, scaled down.
+    private final List<Step> steps = new ArrayList<>();   // The operations, in order.
+    private final List<Image> results = new ArrayList<>(); // The proxy after each step, or null.
+
+    /**
+     * One operation of the chain.
+     */
+    public static final class Step
+    {
+        private final String name;              // The name of the operation.
+        private final PixelOperation op;        // The pixel operation, or null.
+        private final Pipeline.Stage proxyStage; // The operation on the proxy.
+        private final Pipeline.Stage fullStage;  // The operation on the full image.
+        private volatile boolean enabled = true; // Whether the operation is run.
+
+        private Step(String name, PixelOperation op, Pipeline.Stage proxyStage,
+                Pipeline.Stage fullStage)
+        {
+            this.name = name;
+            this.op = op;
+            this.proxyStage = proxyStage;
+            this.fullStage = fullStage;
+        }
+
+        /**
+         * @return The name of the operation.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return True if the operation is run.
+         */
+        public boolean isEnabled()
+        {
+            return enabled;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * Builds an empty chain.
+     *
+     * @param proxy The scaled down image the operations are previewed on. It
+     * is never changed.
+     */
+    public EditChain(Image proxy)
+    {
+        assert (proxy != null);
+
+        this.proxy = proxy;
+    }
+
+    /**
+     * This method adds a pixel operation to the end of the chain.
+     *
+     * @param name The name of the operation.
+     * @param op The pixel operation.
+     */
+    public synchronized void add(String name, PixelOperation op)
+    {
+        assert (op != null);
+
+        add(new Step(name, op, img -> img.applyPointOperations(op), null));
+    }
+
+    /**
+     * This method adds an operation to the end of the chain. Operations that
+     * depend on the size of the image, like frames, need a different stage
+     * for the proxy.
+     *
+     * @param name The name of the operation.
+     * @param proxyStage The operation on the proxy.
+     * @param fullStage The operation on the full image.
+     */
+    public synchronized void add(String name, Pipeline.Stage proxyStage,
+            Pipeline.Stage fullStage)
+    {
+        assert (proxyStage != null && fullStage != null);
+
+        add(new Step(name, null, proxyStage, fullStage));
+    }
+
+    /**
+     * This method removes an operation.
+     *
+     * @param index The position of the operation.
+     */
+    public synchronized void remove(int index)
+    {
+        steps.remove(index);
+        results.remove(index);
+        invalidate(index);
+    }
+
+    /**
+     * This method moves an operation to another position.
+     *
+     * @param from The position of the operation.
+     * @param to The position it moves to.
+     */
+    public synchronized void move(int from, int to)
+    {
+        steps.add(to, steps.remove(from));
+        invalidate(Math.min(from, to));
+    }
+
+    /**
+     * This method switches an operation on or off.
+     *
+     * @param index The position of the operation.
+     * @param enabled True to run the operation.
+     */
+    public synchronized void setEnabled(int index, boolean enabled)
+    {
+        Step step = steps.get(index);
+
+        if (step.enabled != enabled)
+        {
+            step.enabled = enabled;
+            invalidate(index);
+        }
+    }
+
+    /**
+     * This method returns the operations, in order.
+     *
+     * @return A copy of the list of operations.
+     */
+    public synchronized List<Step> getSteps()
+    {
+        return new ArrayList<>(steps);
+    }
+
+    /**
+     * This method returns the number of operations.
+     *
+     * @return The number of operations.
+     */
+    public synchronized int size()
+    {
+        return steps.size();
+    }
+
+    /**
+     * This method runs the operations on the proxy, starting from the first
+     * one whose result is not kept. The chain is checked for cancellation
+     * between operations.
+     *
+     * @param cancelled Tells whether the render is no longer wanted.
+     * @return The proxy after every operation that is switched on, or null
+     * if the render was cancelled. The image must not be changed.
+     * @throws IOException if an operation fails.
+     */
+    public Image render(BooleanSupplier cancelled) throws IOException
+    {
+        while (true)
+        {
+            int index;    // The first step without a result.
+            Step step;    // That step.
+            Image input;  // The image it starts from.
+            boolean enabled;
+
+            synchronized (this)
+            {
+                if (cancelled.getAsBoolean())
+                    return null;
+
+                index = results.indexOf(null);
+
+                if (index < 0)
+                    return steps.isEmpty() ? proxy : results.get(results.size() - 1);
+
+                step = steps.get(index);
+                input = (index == 0) ? proxy : results.get(index - 1);
+                enabled = step.enabled;
+            }
+
+            // A step that is switched off passes its input along as it is.
+            Image output = input;
+
+            if (enabled)
+            {
+                Metrics.Sample sample = Metrics.start(step.name);
+
+                output = new Image(input.getImage());
+                step.proxyStage.run(output);
+                Metrics.stop(sample, (long) output.getImage().getWidth()
+                        * output.getImage().getHeight());
+            }
+
+            synchronized (this)
+            {
+                if (index < steps.size() && steps.get(index) == step
+                        && step.enabled == enabled
+                        && input == ((index == 0) ? proxy : results.get(index - 1)))
+                    results.set(index, output);
+            }
+        }
+    }
+
+    /**
+     * This method runs the operations that are switched on over the full
+     * sized image, fusing neighboring pixel operations like Pipeline does.
+     *
+     * @param image The full sized image, which is changed.
+     * @throws IOException if an operation fails.
+     */
+    public void renderFull(Image image) throws IOException
+    {
+        Pipeline pipeline = new Pipeline();
+
+        for (Step step : getSteps())
+        {
+            if (!step.enabled)
+                continue;
+
+            if (step.op != null)
+                pipeline.addPointOperation(step.name, step.op);
+            else
+                pipeline.addStage(step.name, step.fullStage);
+        }
+
+        pipeline.run(image);
+    }
+
+    /**
+     * This method adds a step to the end of the chain.
+     *
+     * @param step The step.
+     */
+    private void add(Step step)
+    {
+        steps.add(step);
+        results.add(null);
+    }
+
+    /**
+     * This method drops the results of a step and every step after it.
+     *
+     * @param index The first step to drop.
+     */
+    private void invalidate(int index)
+    {
+        for (int k = index; k < results.size(); k++)
+            results.set(k, null);
+    }
+}
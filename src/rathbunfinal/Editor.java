@@ -0,0 +1,402 @@
+package rathbunfinal;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.awt.Toolkit;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntConsumer;
+import javax.imageio.ImageIO;
+import javax.swing.DefaultListModel;
+import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListCellRenderer;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+/**
+ * This class is a window for editing an image interactively. The operations
+ * are listed next to the image, where they can be added, removed, switched
+ * on and off and moved up and down. The image shown is a proxy about the size
+ * of the window, and after each change only the operations from the changed
+ * one onwards are rerun on it, off the event dispatch thread. A change made
+ * while the proxy is being rendered cancels that render and starts a new one.
+ * The full sized image is only decoded and rendered when it is saved.
+ *
+ * @author Jared Rathbun
+ */
+public class Editor
+{
+    // The operations that can be added.
+    private static final String[] OPERATIONS =
+            {"grayscale", "negative", "cartoonify", "blur", "sharpen", "edges",
+                "addframe", "addsticker"};
+
+    private final File file;         // The image being edited.
+    private final Options options;   // The command line options.
+    private final double scale;      // The size of the proxy over the size of the image.
+    private final EditChain chain;   // The operations.
+
+    private final JFrame frame = new JFrame("Image Editor");
+    private final JLabel imageLabel = new JLabel();
+    private final JLabel status = new JLabel(" ");
+    private final DefaultListModel<EditChain.Step> model = new DefaultListModel<>();
+    private final JList<EditChain.Step> list = new JList<>(model);
+
+    private SwingWorker<Image, Void> render; // The render in progress, or null.
+
+    /**
+     * Builds an editor. It must be built on the event dispatch thread.
+     *
+     * @param file The image being edited.
+     * @param options The command line options.
+     * @param proxy The image scaled down to fit the window.
+     * @param size The size of the full image.
+     */
+    private Editor(File file, Options options, Image proxy, Dimension size)
+    {
+        this.file = file;
+        this.options = options;
+        this.scale = (double) proxy.getImage().getWidth() / size.width;
+        this.chain = new EditChain(proxy);
+    }
+
+    /**
+     * This method opens an editor for an image file, starting with the
+     * operations named on the command line. The proxy is decoded on the
+     * calling thread and the window is shown on the event dispatch thread.
+     *
+     * @param file The image to edit.
+     * @param options The command line options and operations.
+     * @throws IOException if the image cannot be read.
+     */
+    public static void open(File file, Options options) throws IOException
+    {
+        assert (file != null);
+
+        // The proxy leaves room beside it for the list of operations.
+        Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+        Image proxy = new Image(Preview.read(file, (int) (screen.getWidth() * 0.6),
+                (int) (screen.getHeight() * 0.8)));
+        Dimension size = Preview.sizeOf(file);
+
+        SwingUtilities.invokeLater(() ->
+        {
+            Editor editor = new Editor(file, options, proxy, size);
+
+            editor.show();
+
+            for (String task : options.getOperations())
+                editor.addOperation(task);
+
+            editor.rerender();
+        });
+    }
+
+    /**
+     * This method lays out the window and shows it.
+     */
+    private void show()
+    {
+        JComboBox<String> operations = new JComboBox<>(OPERATIONS);
+        JButton add = new JButton("Add");
+        JButton remove = new JButton("Remove");
+        JButton up = new JButton("Up");
+        JButton down = new JButton("Down");
+        JButton toggle = new JButton("On/Off");
+        JButton save = new JButton("Save...");
+
+        add.addActionListener(e ->
+        {
+            addOperation((String) operations.getSelectedItem());
+            rerender();
+        });
+        remove.addActionListener(e -> change(index -> chain.remove(index), 0));
+        up.addActionListener(e -> change(index -> chain.move(index, index - 1), -1));
+        down.addActionListener(e -> change(index -> chain.move(index, index + 1), 1));
+        toggle.addActionListener(e -> change(index -> chain.setEnabled(index,
+                !model.get(index).isEnabled()), 0));
+        save.addActionListener(e -> save());
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new StepRenderer());
+
+        // A double click switches an operation on or off.
+        list.addMouseListener(new MouseAdapter()
+        {
+            @Override
+            public void mouseClicked(MouseEvent e)
+            {
+                if (e.getClickCount() == 2)
+                    toggle.doClick();
+            }
+        });
+
+        JPanel buttons = new JPanel(new GridLayout(0, 1));
+        buttons.add(operations);
+        buttons.add(add);
+        buttons.add(remove);
+        buttons.add(up);
+        buttons.add(down);
+        buttons.add(toggle);
+        buttons.add(save);
+
+        JPanel side = new JPanel(new BorderLayout());
+        side.add(new JScrollPane(list), BorderLayout.CENTER);
+        side.add(buttons, BorderLayout.SOUTH);
+
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.getContentPane().add(imageLabel, BorderLayout.CENTER);
+        frame.getContentPane().add(side, BorderLayout.EAST);
+        frame.getContentPane().add(status, BorderLayout.SOUTH);
+        frame.pack();
+        frame.setVisible(true);
+    }
+
+    /**
+     * This method adds an operation to the end of the chain. Frames and
+     * stickers ask for their file here, once, and are scaled down to match
+     * the proxy, as are the sizes of the blurs.
+     *
+     * @param task The name of the operation.
+     */
+    private void addOperation(String task)
+    {
+        try
+        {
+            PixelOperation op = Pipeline.pointOperation(task, options);
+            boolean blend = options.has("blend");
+
+            if (op != null)
+                chain.add(task, op);
+            else if (task.equals("cartoonify"))
+            {
+                chain.add(task, Pipeline.cartoonifyStage(options, scale),
+                        Pipeline.cartoonifyStage(options));
+            }
+            else if (task.equals("blur") || task.equals("sharpen")
+                    || task.equals("edges"))
+            {
+                chain.add(task, Pipeline.convolutionStage(task, options, scale),
+                        Pipeline.convolutionStage(task, options));
+            }
+            else if (task.equals("addframe") || task.equals("addsticker"))
+            {
+                boolean isFrame = task.equals("addframe");
+                File overlay = ImageFinal.promptForFile(isFrame ? "Select Frame"
+                        : "Select Sticker");
+
+                if (overlay == null)
+                    return;
+
+                Overlay proxyOverlay = scaledOverlay(overlay);
+
+                chain.add(task, img -> checkFits(isFrame
+                        ? img.addFrame(proxyOverlay, blend)
+                        : img.addSticker(proxyOverlay, blend), isFrame),
+                        img -> checkFits(isFrame
+                        ? img.addFrame(overlay, blend)
+                        : img.addSticker(overlay, blend), isFrame));
+            }
+        } catch (IOException | IllegalArgumentException ex)
+        {
+            status.setText(task + ": " + ex.getMessage());
+        }
+
+        refreshList(model.size());
+    }
+
+    /**
+     * This method changes the operation that is selected, then rerenders.
+     *
+     * @param change The change, given the position of the operation.
+     * @param offset How far the selection moves.
+     */
+    private void change(IntConsumer change, int offset)
+    {
+        int index = list.getSelectedIndex();
+
+        if (index < 0 || index + offset < 0 || index + offset >= model.size())
+            return;
+
+        change.accept(index);
+        refreshList(index + offset);
+        rerender();
+    }
+
+    /**
+     * This method shows the operations of the chain in the list.
+     *
+     * @param selected The position to select.
+     */
+    private void refreshList(int selected)
+    {
+        model.clear();
+
+        for (EditChain.Step step : chain.getSteps())
+            model.addElement(step);
+
+        if (!model.isEmpty())
+            list.setSelectedIndex(Math.min(selected, model.size() - 1));
+    }
+
+    /**
+     * This method cancels the render in progress, if there is one, and
+     * starts rendering the proxy again.
+     */
+    private void rerender()
+    {
+        if (render != null)
+            render.cancel(false);
+
+        status.setText("Rendering...");
+
+        render = new SwingWorker<Image, Void>()
+        {
+            private final long start = System.nanoTime();
+
+            @Override
+            protected Image doInBackground() throws IOException
+            {
+                return chain.render(this::isCancelled);
+            }
+
+            @Override
+            protected void done()
+            {
+                if (isCancelled())
+                    return;
+
+                try
+                {
+                    Image image = get();
+
+                    if (image == null)
+                        return;
+
+                    imageLabel.setIcon(new ImageIcon(image.getImage()));
+                    status.setText(String.format("Preview %dx%d in %.0f ms",
+                            image.getImage().getWidth(), image.getImage().getHeight(),
+                            (System.nanoTime() - start) / 1e6));
+                    frame.pack();
+                } catch (InterruptedException | ExecutionException ex)
+                {
+                    status.setText("Failed: " + ((ex.getCause() != null)
+                            ? ex.getCause().getMessage() : ex.getMessage()));
+                }
+            }
+        };
+
+        render.execute();
+    }
+
+    /**
+     * This method asks where to save the image, then decodes the full sized
+     * image, runs the operations on it and writes it, all off the event
+     * dispatch thread.
+     */
+    private void save()
+    {
+        File target = ImageFinal.chooseSaveFile();
+
+        if (target == null)
+            return;
+
+        status.setText("Rendering full size...");
+
+        new SwingWorker<Void, Void>()
+        {
+            @Override
+            protected Void doInBackground() throws IOException
+            {
+                Image full = new Image(file);
+
+                chain.renderFull(full);
+                ImageFinal.writeImage(full.getImage(), target);
+                return null;
+            }
+
+            @Override
+            protected void done()
+            {
+                try
+                {
+                    get();
+                    status.setText("Saved " + target.getName());
+                } catch (InterruptedException | ExecutionException ex)
+                {
+                    status.setText("Save failed: " + ((ex.getCause() != null)
+                            ? ex.getCause().getMessage() : ex.getMessage()));
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * This method decodes a frame or sticker and scales it down as much as
+     * the proxy is scaled down from the image.
+     *
+     * @param overlay The frame or sticker file.
+     * @return The scaled overlay.
+     * @throws IOException if the file cannot be read.
+     */
+    private Overlay scaledOverlay(File overlay) throws IOException
+    {
+        BufferedImage image = ImageIO.read(overlay);
+
+        if (image == null)
+            throw new IOException("Not an image: " + overlay);
+
+        return new Overlay(Preview.scale(image,
+                (int) Math.round(image.getWidth() * scale),
+                (int) Math.round(image.getHeight() * scale)));
+    }
+
+    /**
+     * This method fails an operation whose frame or sticker did not fit.
+     *
+     * @param fits Whether the frame or sticker was applied.
+     * @param isFrame True for a frame, false for a sticker.
+     * @throws IOException if it did not fit.
+     */
+    private static void checkFits(boolean fits, boolean isFrame) throws IOException
+    {
+        if (!fits)
+            throw new IOException(isFrame ? "Frame is too big" : "Sticker is too big");
+    }
+
+    /**
+     * Shows each operation as a check box that is ticked if it is on.
+     */
+    private static class StepRenderer extends JCheckBox
+            implements ListCellRenderer<EditChain.Step>
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Component getListCellRendererComponent(
+                JList<? extends EditChain.Step> list, EditChain.Step step, int index,
+                boolean isSelected, boolean cellHasFocus)
+        {
+            setText(step.getName());
+            setSelected(step.isEnabled());
+            setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+            setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
+            return this;
+        }
+    }
+}
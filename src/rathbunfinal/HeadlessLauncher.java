@@ -0,0 +1,194 @@
+package rathbunfinal;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This class starts the jobs that need no screen: processing one image from
+ * the command line, batch mode, streaming mode and server mode. Unlike
+ * ImageFinal it never refers to Swing or to the display, so starting it
+ * loads none of those classes, and it runs with java.awt.headless set so
+ * the AWT classes it does use never look for a screen either. Together with
+ * the class data sharing archive made by "ant cds" this keeps the start-up
+ * time of a single small job down.
+ *
+ * @author Jared Rathbun
+ */
+public class HeadlessLauncher
+{
+    /**
+     * This class only holds static methods.
+     */
+    private HeadlessLauncher()
+    {
+    }
+
+    /**
+     * This method runs a job without a screen.
+     *
+     * @param args The command line arguments.
+     * @throws IOException if an image cannot be read or written.
+     * @throws InterruptedException if a batch job is interrupted.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        Options options = Options.parse(args);
+        String[] ops = options.getOperations();
+        boolean valid = accepts(options) && (ops.length > 0 || options.has("serve"));
+
+        for (String op : ops)
+            valid &= Pipeline.isOperation(op);
+
+        if (!valid)
+        {
+            printUsage();
+            System.exit(2);
+            return;
+        }
+
+        launch(options);
+    }
+
+    /**
+     * This method checks whether the options describe a job that needs no
+     * screen.
+     *
+     * @param options The command line options.
+     * @return True if the job can be run by this launcher.
+     */
+    public static boolean accepts(Options options)
+    {
+        return options.has("batch") || options.has("stream") || options.has("serve")
+                || (options.has("input") && options.has("output"));
+    }
+
+    /**
+     * This method runs a job that needs no screen and ends the program with
+     * its exit status, except for a server, which keeps the program running.
+     *
+     * @param options The command line options and operations.
+     * @throws IOException if an image cannot be read or written.
+     * @throws InterruptedException if a batch job is interrupted.
+     */
+    public static void launch(Options options) throws IOException, InterruptedException
+    {
+        assert accepts(options);
+
+        // Set before any AWT class starts up, so none of them look for a screen.
+        System.setProperty("java.awt.headless", "true");
+
+        // The stages are only timed when asked for.
+        String report = options.get("metrics", null);
+        if (report != null)
+            Metrics.setEnabled(true);
+
+        // Server mode keeps running and processes the images posted to it.
+        if (options.has("serve"))
+        {
+            ImageServer.run(options);
+            return;
+        }
+
+        int status;
+
+        if (options.has("batch"))
+            status = BatchProcessor.run(options);
+        else if (options.has("stream"))
+            status = StripProcessor.run(options);
+        else
+            status = processFile(options);
+
+        writeMetrics(report);
+        System.exit(status);
+    }
+
+    /**
+     * This method runs the operations on the image named by --input and
+     * writes it to --output, in the format named by its extension.
+     *
+     * @param options The command line options and operations.
+     * @return The exit status, 0 if the image was written.
+     * @throws IOException if the image cannot be read, processed or written.
+     */
+    public static int processFile(Options options) throws IOException
+    {
+        Image img = new Image(new File(options.get("input", null)));
+        File output = new File(options.get("output", null));
+
+        BatchProcessor.compile(options, BatchProcessor.fileOption(options, "frame"),
+                BatchProcessor.fileOption(options, "sticker")).run(img);
+
+        ImageEncoder encoder = ImageEncoder.fromOptions(options);
+
+        try
+        {
+            System.out.println(output + ": " + encoder.write(img.getImage(), output));
+        } finally
+        {
+            encoder.close();
+        }
+
+        return 0;
+    }
+
+    /**
+     * This method writes the timings of the stages to the file named by the
+     * --metrics option. A bare --metrics only publishes them over JMX.
+     *
+     * @param report The value of the --metrics option, or null.
+     * @throws IOException if the report cannot be written.
+     */
+    static void writeMetrics(String report) throws IOException
+    {
+        if (report != null && !report.equals("true"))
+            Metrics.writeReport(new File(report));
+    }
+
+    /**
+     * This method prints how the program is used.
+     */
+    static void printUsage()
+    {
+        System.out.println("Usage: imagemanip [ grayscale | addframe "
+                + "| addsticker | cartoonify | negative | blur | sharpen "
+                + "| edges ]");
+        System.out.println("       imagemanip --input=<file> --output=<file> "
+                + "[--frame=<file>] [--sticker=<file>] [--quality=<0-100>] "
+                + "[--png-compression=<0-9>] operations...");
+        System.out.println("       imagemanip --batch --input=<dir or glob> "
+                + "--output=<dir> [--frame=<file>] [--sticker=<file>] "
+                + "[--workers=<n>] [--io-threads=<n>] [--in-flight=<n>] "
+                + "[--threads=<n>] [--format=<jpg, png, bmp or argb>] "
+                + "[--quality=<0-100>] [--png-compression=<0-9>] "
+                + "[--progressive] operations...");
+        System.out.println("       imagemanip --stream --input=<file> "
+                + "--output=<png, tif or bmp file> [--strip-rows=<n>] "
+                + "[ grayscale | cartoonify | negative ]...");
+        System.out.println("       imagemanip --edit [ grayscale | addframe "
+                + "| addsticker | cartoonify | negative | blur | sharpen "
+                + "| edges ]...");
+        System.out.println("       imagemanip --serve [--port=<n>] [--workers=<n>] "
+                + "[--max-memory=<MB>] [--threads=<n>] [--frame=<file>] "
+                + "[--sticker=<file>] [--quality=<0-100>] [--png-compression=<0-9>]");
+        System.out.println("           then POST images to /process?ops=<operations,"
+                + "...>&format=<jpg, png or bmp>&<option>=<value>");
+        System.out.println("Options: --blend  blend the partly transparent pixels "
+                + "of frames and stickers");
+        System.out.println("         --metric=<hsv or lab>  the color distance "
+                + "cartoonify uses");
+        System.out.println("         --palette=<file>  the colors cartoonify "
+                + "uses, one r,g,b line each");
+        System.out.println("         --colors=<n>  cartoonify with n colors "
+                + "picked from the image");
+        System.out.println("         --dither=<none, ordered or fs>  dither "
+                + "cartoonify with a Bayer matrix or Floyd-Steinberg");
+        System.out.println("         --outline[=<0-255>]  draw black outlines "
+                + "along the edges cartoonify flattens");
+        System.out.println("         --sigma=<pixels>  the size of the blur "
+                + "for blur and sharpen, --box=<radius> for a box blur");
+        System.out.println("         --amount=<n>  how strongly sharpen "
+                + "sharpens, 1 by default");
+        System.out.println("         --metrics[=<report.json>]  time each stage, "
+                + "published over JMX and written to the report");
+    }
+}
@@ -6,24 +6,52 @@
 package rathbunfinal;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
 import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.function.Consumer;
 
 public class Image
 {
     private BufferedImage img; // An image.
+    private int[] pixels;      // The pixels of img, row by row.
+    private int width;         // The width of img.
+    private int height;        // The height of img.
+    private int alphaMask;     // Forces the alpha channel on for opaque images.
+    
+    // Past this many different colors, cartoonify uses the palette's lookup
+    // table instead of a table of the image's own colors.
+    private static final int MAX_UNIQUE_COLORS = 1 << 19;
     
     /**
      * Default Constructor sets the img equal to the file entered by the user.
+     * Raw .argb images are mapped straight into the pixel array.
      * 
      * @param file The image the user selects.
      * @throws IOException 
      */
     public Image(File file) throws IOException
     {
-        img = ImageIO.read(file);
+	Metrics.Sample sample = Metrics.start("decode");
+	
+        setImage(RawImage.accepts(file) ? RawImage.read(file) 
+		: toIntRaster(ImageIO.read(file)));
+	
+	Metrics.stop(sample, (long) width * height);
+    }
+    
+    /**
+     * Constructor that copies an image that is already in memory.
+     * 
+     * @param image The image to copy.
+     */
+    public Image(BufferedImage image)
+    {
+        setImage(toIntRaster(image));
     }
     
     /**
@@ -36,19 +64,108 @@ public class Image
 	return this.img;
     }
     
+    /**
+     * This method blurs the image with a Gaussian.
+     * 
+     * @param sigma The standard deviation of the Gaussian, in pixels.
+     */
+    public void blur(double sigma)
+    {
+	convolve(dst -> Convolution.gaussianBlur(pixels, dst, width, height, sigma));
+    }
+    
+    /**
+     * This method blurs each pixel with the average of the square around it. 
+     * It takes the same time whatever the radius.
+     * 
+     * @param radius How far the square reaches from each pixel.
+     */
+    public void boxBlur(int radius)
+    {
+	convolve(dst -> Convolution.boxBlur(pixels, dst, width, height, radius));
+    }
+    
+    /**
+     * This method sharpens the image with an unsharp mask.
+     * 
+     * @param sigma The standard deviation of the blur that is taken away.
+     * @param amount How strongly to sharpen, 1 for the usual amount.
+     */
+    public void sharpen(double sigma, double amount)
+    {
+	convolve(dst -> Convolution.sharpen(pixels, dst, width, height, sigma, amount));
+    }
+    
+    /**
+     * This method replaces the image with its edges, found by the Sobel 
+     * operator: the stronger the edge, the brighter the pixel.
+     */
+    public void edges()
+    {
+	int[] magnitude = new int[pixels.length];
+	
+	Convolution.sobel(pixels, magnitude, width, height);
+	
+	TileScheduler.getDefault().forEachBand(height, (first, last) ->
+	{
+	    for (int p = first * width; p < last * width; p++)
+		pixels[p] = (pixels[p] & 0xFF000000) | alphaMask 
+			| (magnitude[p] * 0x010101);
+	});
+    }
+    
+    /**
+     * This method runs an operation, like cartoonify, and then draws black
+     * outlines where the image had edges before it. The edges are found on a
+     * slightly blurred copy so noise does not get outlined.
+     * 
+     * @param threshold How strong an edge must be to be outlined, from 0 to 255.
+     * @param operation The operation, which must not change the image's size.
+     * @throws IOException 
+     */
+    public void outline(int threshold, Pipeline.Stage operation) throws IOException
+    {
+	outline(threshold, 1.0, operation);
+    }
+    
+    /**
+     * This method runs an operation and then draws black outlines where the 
+     * image had edges before it, with the edges found on a copy blurred by a
+     * Gaussian of the given size. A scaled down copy of an image needs a 
+     * smaller blur to find the same edges.
+     * 
+     * @param threshold How strong an edge must be to be outlined, from 0 to 255.
+     * @param sigma The standard deviation of the blur, in pixels.
+     * @param operation The operation, which must not change the image's size.
+     * @throws IOException 
+     */
+    public void outline(int threshold, double sigma, Pipeline.Stage operation) 
+	    throws IOException
+    {
+	int[] smooth = new int[pixels.length];
+	int[] magnitude = new int[pixels.length];
+	
+	Convolution.gaussianBlur(pixels, smooth, width, height, sigma);
+	Convolution.sobel(smooth, magnitude, width, height);
+	
+	operation.run(this);
+	
+	assert (pixels.length == magnitude.length);
+	
+	TileScheduler.getDefault().forEachBand(height, (first, last) ->
+	{
+	    for (int p = first * width; p < last * width; p++)
+		if (magnitude[p] > threshold)
+		    pixels[p] = (pixels[p] & 0xFF000000) | alphaMask;
+	});
+    }
+    
     /**
      * This method changes the color image in grayscale.
      */
     public void toGrayScale()
     {
-	for (int i = 0; i < img.getWidth(); i++)
-	{
-	    for (int j = 0; j < img.getHeight(); j++)
-	    {	
-		// The image's pixel is set to the grayscale version of it.
-		img.setRGB(i,j,rgbaToGray(img.getRGB(i,j)));
-	    }
-	} 
+	applyPointOperations(PointOperations.GRAYSCALE);
     }
     
     /**
@@ -60,27 +177,50 @@ public class Image
      * @throws IOException 
      */
     public boolean addFrame(File frame) throws IOException
+    {
+	return addFrame(frame, false);
+    }
+    
+    /**
+     * This method adds a "frame" to the image.
+     * 
+     * @param frame The frame the user selects.
+     * @param blend true to blend the frame's partly transparent pixels with the 
+     * image, false to copy every pixel that is not fully transparent.
+     * @return true or false, true if the frame was applied, and false if the frame is
+     * bigger than the image.
+     * @throws IOException 
+     */
+    public boolean addFrame(File frame, boolean blend) throws IOException
     {
 	assert (frame != null);
 	
-	BufferedImage frameImg; // The frame as an image.
-        BufferedImage croppedImg = img;
-
-        frameImg = ImageIO.read(frame);
-
+	return addFrame(Overlay.load(frame), blend);
+    }
+    
+    /**
+     * This method adds a "frame" that is already decoded to the image.
+     * 
+     * @param frameImg The frame.
+     * @param blend true to blend the frame's partly transparent pixels with the 
+     * image, false to copy every pixel that is not fully transparent.
+     * @return true or false, true if the frame was applied, and false if the frame is
+     * bigger than the image.
+     */
+    public boolean addFrame(Overlay frameImg, boolean blend)
+    {
+	assert (frameImg != null);
+	
 	// If the frame is larger than the image the method returns false.
-	if (frameImg.getWidth() > img.getWidth() || 
-		frameImg.getHeight() > img.getHeight())
+	if (frameImg.getWidth() > width || frameImg.getHeight() > height)
 	    return false;
 	
-	
 	// The new cropped Image is made.
-	img = croppedImg.getSubimage((img.getWidth() - frameImg.getWidth()) / 2, 
-		(img.getHeight() - frameImg.getHeight()) / 2,frameImg.getWidth(),
-		frameImg.getHeight());
+	crop((width - frameImg.getWidth()) / 2, (height - frameImg.getHeight()) / 2,
+		frameImg.getWidth(), frameImg.getHeight());
 
 	// The cropped image is applied.
-	applyOverlay(frameImg);
+	applyOverlay(frameImg, blend);
 	  
 	return true;
     }
@@ -94,19 +234,45 @@ public class Image
      * @throws IOException 
      */
     public boolean addSticker(File sticker) throws IOException
+    {
+	return addSticker(sticker, false);
+    }
+    
+    /**
+     * This method adds a sticker to the image the user enters.
+     * 
+     * @param sticker The sticker the user enters.
+     * @param blend true to blend the sticker's partly transparent pixels with the 
+     * image, false to copy every pixel that is not fully transparent.
+     * @return true or false, true if the sticker was applied, and false if the sticker is 
+     * bigger than the image.
+     * @throws IOException 
+     */
+    public boolean addSticker(File sticker, boolean blend) throws IOException
     {
 	assert (sticker != null);
 	
-	BufferedImage stickerImg;
-
-         stickerImg = ImageIO.read(sticker);
+	return addSticker(Overlay.load(sticker), blend);
+    }
+    
+    /**
+     * This method adds a sticker that is already decoded to the image.
+     * 
+     * @param stickerImg The sticker.
+     * @param blend true to blend the sticker's partly transparent pixels with the 
+     * image, false to copy every pixel that is not fully transparent.
+     * @return true or false, true if the sticker was applied, and false if the sticker is 
+     * bigger than the image.
+     */
+    public boolean addSticker(Overlay stickerImg, boolean blend)
+    {
+	assert (stickerImg != null);
 	 
-	if (stickerImg.getWidth() > img.getWidth() || 
-		stickerImg.getHeight() > img.getHeight())
+	if (stickerImg.getWidth() > width || stickerImg.getHeight() > height)
                 return false;
 
          // The sticker is applied to the image.
-         applyOverlay(stickerImg);
+         applyOverlay(stickerImg, blend);
 	
 	return true;
 	
@@ -119,104 +285,173 @@ public class Image
      */
     public void cartoonify() throws FileNotFoundException
     {	
-	// The crayola palette.
-	int[] palette = PixelColor.getPalette();
+	cartoonify(ColorMetrics.HSV_CONE);
+    }
+    
+    /**
+     * This method turns the image into a cartoon, matching each pixel to the
+     * palette color that is closest under the given color metric.
+     * 
+     * @param metric The color metric, like ColorMetrics.CIELAB.
+     * @throws FileNotFoundException 
+     */
+    public void cartoonify(ColorMetric metric) throws FileNotFoundException
+    {	
+	cartoonify(metric, Dither.NONE);
+    }
+    
+    /**
+     * This method turns the image into a cartoon, matching each pixel to the
+     * palette color that is closest under the given color metric and
+     * dithering to hide the bands the palette would leave in gradients.
+     * 
+     * @param metric The color metric, like ColorMetrics.CIELAB.
+     * @param dither The dithering, like Dither.FLOYD_STEINBERG.
+     * @throws FileNotFoundException 
+     */
+    public void cartoonify(ColorMetric metric, Dither dither) throws FileNotFoundException
+    {	
+	// The crayola palette, matched through a lookup table built once per palette.
+	cartoonify(PaletteMap.forPalette(PixelColor.getPalette(), metric), dither);
+    }
+    
+    /**
+     * This method sets each pixel to a color of the palette, dithered.
+     * 
+     * @param palette The palette.
+     * @param dither The dithering, like Dither.ORDERED.
+     */
+    public void cartoonify(PaletteMap palette, Dither dither)
+    {
+	// Each pixel is set to the closest color in the palette.
+	if (dither == Dither.NONE)
+	{
+	    applyPointOperations(PointOperations.palette(palette));
+	    return;
+	}
 	
-	// A 2-D Array with the same dimensions as the image.
-	int[][] clusterColors = new int[img.getWidth()][img.getHeight()];
+	dither.apply(pixels, width, height, palette);
 	
-	clusterPixels(palette,clusterColors);
+	// Opaque images keep their alpha channel on.
+	if (alphaMask != 0)
+	    TileScheduler.getDefault().forEachBand(height, (first, last) ->
+	    {
+		for (int p = first * width; p < last * width; p++)
+		    pixels[p] |= alphaMask;
+	    });
     }
     
     /**
-     * This method returns the grayscale version of the entered rgba value. 
+     * This method turns the image into a cartoon with a palette picked from
+     * the image itself by median cut, instead of the Crayola colors.
      * 
-     * @param rgba An RGBA that is between 0 and 255.
-     * @return The grayscale version of rgba. 
+     * @param colors The number of colors in the palette.
+     * @param metric The color metric used to match pixels to the palette.
      */
-    private int rgbaToGray(int rgba)
+    public void cartoonify(int colors, ColorMetric metric)
+    {	
+	cartoonify(colors, metric, Dither.NONE);
+    }
+    
+    /**
+     * This method turns the image into a cartoon with a palette picked from
+     * the image itself by median cut, dithered.
+     * 
+     * @param colors The number of colors in the palette.
+     * @param metric The color metric used to match pixels to the palette.
+     * @param dither The dithering, like Dither.FLOYD_STEINBERG.
+     */
+    public void cartoonify(int colors, ColorMetric metric, Dither dither)
+    {	
+	int[] palette = MedianCut.palette(pixels, width, height, colors);
+	
+	// The palette belongs to this image alone, so it is not cached.
+	// Dithering makes new colors, so they cannot be gathered up first.
+	if (dither == Dither.NONE)
+	    applyPalette(new PaletteMap(palette, metric));
+	else
+	    cartoonify(new PaletteMap(palette, metric), dither);
+    }
+    
+    /**
+     * This method sets each pixel to the closest color of a palette. The 
+     * image's different colors are gathered into a table first, each one is
+     * matched to the palette once, and then every pixel is looked up in the 
+     * table. This is for palettes made for one image, where the palette's own
+     * lookup table would be filled in for nothing. The lookup table is used 
+     * anyway if the image has too many colors.
+     * 
+     * @param palette The palette.
+     */
+    private void applyPalette(PaletteMap palette)
     {
-	assert (rgba > 0) && (rgba < 256);
+	ColorIndex colors = uniqueColors();
 	
-	// The red channel.
-	int redChannel = (int) Math.floor((PixelColor.getRedChannel(rgba) + 
-		PixelColor.getGreenChannel(rgba) + 
-		PixelColor.getBlueChannel(rgba)) / 3 + .5);
+	if (colors == null)
+	{
+	    applyPointOperations(PointOperations.palette(palette));
+	    return;
+	}
 	
-	// The green channel.
-	int greenChannel = (int) Math.floor((PixelColor.getRedChannel(rgba) + 
-		PixelColor.getGreenChannel(rgba) + 
-		PixelColor.getBlueChannel(rgba)) / 3 + .5);
+	int[] table = palette.getPalette();
+	TileScheduler scheduler = TileScheduler.getDefault();
 	
-	// The blue channel.
-	int blueChannel = (int) Math.floor((PixelColor.getRedChannel(rgba) + 
-		PixelColor.getGreenChannel(rgba) + 
-		PixelColor.getBlueChannel(rgba)) / 3 + .5);
+	// Each different color is matched once, the slots split between threads.
+	scheduler.forEachBand(colors.capacity(), (first, last) ->
+	{
+	    for (int slot = first; slot < last; slot++)
+		if (colors.keyAt(slot) != ColorIndex.EMPTY)
+		    colors.setValueAt(slot, 
+			    table[palette.searchIndex(colors.keyAt(slot))]);
+	});
 	
-	// The encoded grayscale value is returned.
-    	return PixelColor.encodeToRGBA(redChannel,greenChannel,blueChannel,
-		PixelColor.getAlphaChannel(rgba));
+	// Every pixel is looked up in a single pass.
+	scheduler.forEachBand(height, (first, last) ->
+	{
+	    for (int p = first * width; p < last * width; p++)
+		pixels[p] = colors.get(pixels[p]) | alphaMask;
+	});
     }
     
     /**
-     * This method applies the image passed as a parameter to img.
+     * This method gathers the different colors of the image, one band of 
+     * rows per thread.
      * 
-     * @param overlay An image.
+     * @return The colors, or null if there are more than MAX_UNIQUE_COLORS.
      */
-    private void applyOverlay(BufferedImage overlay)
+    private ColorIndex uniqueColors()
     {
-	int pixelColor;
+	ColorIndex colors = new ColorIndex(1 << 12);
 	
-	for (int i = 0; i < overlay.getWidth(); i++)
+	TileScheduler.getDefault().forEachBand(height, (first, last) ->
 	{
-	    for (int j = 0; j < overlay.getHeight(); j++)
+	    ColorIndex band = new ColorIndex(1 << 12);
+	    
+	    for (int p = first * width; p < last * width 
+		    && band.size() <= MAX_UNIQUE_COLORS; p++)
+		band.add(pixels[p]);
+	    
+	    synchronized (colors)
 	    {
-		pixelColor = overlay.getRGB(i,j); // The RGB value of the current pixel.
-		
-		// If the alpha value is not 0, the pixel is set to pixelColor.
-		if (PixelColor.getAlphaChannel(pixelColor) != 0)
-		    img.setRGB(i,j,pixelColor);
+		if (colors.size() <= MAX_UNIQUE_COLORS)
+		    colors.addAll(band);
 	    }
-	} 
+	});
+	
+	return (colors.size() <= MAX_UNIQUE_COLORS) ? colors : null;
     }
     
     /**
-     * This method replaces each pixel of the image with the closet version of the color 
-     * in the crayola palette.
+     * This method applies the image passed as a parameter to img. Only the
+     * spans of the overlay that are not fully transparent are touched.
      * 
-     * @param clusterColors The palette of the 120 crayola colors.
-     * @param clusterMember A 2-D array that is the same dimensions of the image.
+     * @param overlay A frame or sticker.
+     * @param blend true to blend partly transparent pixels.
      */
-    private void clusterPixels(int[] clusterColors, int[][] clusterMember)
+    private void applyOverlay(Overlay overlay, boolean blend)
     {
-	assert (clusterMember.length == img.getHeight()) 
-		&& (clusterMember[0].length == img.getWidth());
-
-	for (int i = 0; i < clusterMember.length; i++)
-	{  
-            for (int j = 0; j < clusterMember[0].length; j++)
-	    {
-                  // The closest color in the palette to the pixel.
-                  int bestColorIndex = 0;
-                  
-		for (int k = 0; k < clusterColors.length; k++)
-		{
-		    if (PixelColor.colorDistance(img.getRGB(i,j),clusterColors[k]) 
-                            < PixelColor.colorDistance(img.getRGB(i,j),
-                                    clusterColors[bestColorIndex]))
-		    {
-                        // The best color index is saved as k.
-			bestColorIndex = k;			  
-		    }
-
-		   
-		}
-                  
-		// Each pixel is set at the best index in the color palette.
-		img.setRGB(i,j,clusterColors[bestColorIndex]);      
-	    }
-	}
-	
+	TileScheduler.getDefault().forEachBand(overlay.getHeight(), (first, last) ->
+		overlay.applyTo(pixels, width, alphaMask != 0, blend, first, last));
     }
     
     /**
@@ -224,21 +459,131 @@ public class Image
      */
     public void negativeImage()
     {
-	int r, g, b; // The values for each channel.
-	
-	for (int i = 0; i < img.getWidth(); i++)
+	applyPointOperations(PointOperations.NEGATIVE);
+    } 
+    
+    /**
+     * This method runs the pixel operations on every pixel of the image in a 
+     * single pass. Each row has all of the operations applied to it before 
+     * moving on to the next row.
+     * 
+     * @param ops The pixel operations, in the order they are applied.
+     */
+    public void applyPointOperations(PixelOperation... ops)
+    {
+	TileScheduler.getDefault().forEachBand(height, (first, last) ->
 	{
-	    for (int j = 0; j < img.getHeight(); j++)
+	    for (int j = first; j < last; j++)
 	    {
-		// Each pixel's channel is found.
-		r = PixelColor.getRedChannel(img.getRGB(i,j));
-		g = PixelColor.getGreenChannel(img.getRGB(i,j));
-		b = PixelColor.getBlueChannel(img.getRGB(i,j));
+		int start = j * width; // The first pixel of the row.
+		int end = start + width; // One past the last pixel of the row.
+		
+		for (PixelOperation op : ops)
+		    op.apply(pixels, start, end);
 		
-		// The negative is set as (i,j) by subtracting the RGB value from 255.
-		img.setRGB(i,j,PixelColor.encodeToRGBA(255 - r, 255 - g, 255 -b, 
-			PixelColor.getAlphaChannel(img.getRGB(i, j))));
+		// Opaque images keep their alpha channel on.
+		if (alphaMask != 0)
+		    for (int p = start; p < end; p++)
+			pixels[p] |= alphaMask;
 	    }
-	}
-    } 
+	});
+    }
+    
+    /**
+     * This method cuts the image down to the given rectangle.
+     * 
+     * @param x The left edge of the rectangle.
+     * @param y The top edge of the rectangle.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     */
+    private void crop(int x, int y, int w, int h)
+    {
+	BufferedImage cropped = new BufferedImage(w, h, img.getType());
+	int[] croppedPixels = 
+		((DataBufferInt) cropped.getRaster().getDataBuffer()).getData();
+	
+	// Each row of the rectangle is copied over.
+	for (int j = 0; j < h; j++)
+	    System.arraycopy(pixels, (y + j) * width + x, croppedPixels, j * w, w);
+	
+	setImage(cropped);
+    }
+    
+    /**
+     * This method runs a filter from the pixels into a new image of the same 
+     * type, which then replaces img.
+     * 
+     * @param filter Fills in the new image's pixels, given its array.
+     */
+    private void convolve(Consumer<int[]> filter)
+    {
+	BufferedImage filtered = new BufferedImage(width, height, img.getType());
+	int[] dst = ((DataBufferInt) filtered.getRaster().getDataBuffer()).getData();
+	
+	filter.accept(dst);
+	setImage(filtered);
+	
+	// With no operations, this only turns the alpha channel back on.
+	if (alphaMask != 0)
+	    applyPointOperations();
+    }
+    
+    /**
+     * This method makes img the given image and grabs its backing array.
+     * 
+     * @param image An image of TYPE_INT_RGB or TYPE_INT_ARGB.
+     */
+    private void setImage(BufferedImage image)
+    {
+	img = image;
+	pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	width = image.getWidth();
+	height = image.getHeight();
+	alphaMask = image.getColorModel().hasAlpha() ? 0 : 0xFF000000;
+    }
+    
+    /**
+     * This method copies an image into an image backed by a single int array,
+     * TYPE_INT_ARGB if the image has an alpha channel and TYPE_INT_RGB if not.
+     * The colors are converted the same way getRGB converts them.
+     * 
+     * @param image The image that was read.
+     * @return An equivalent image backed by an int array.
+     */
+    static BufferedImage toIntRaster(BufferedImage image)
+    {
+	int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB 
+		: BufferedImage.TYPE_INT_RGB;
+	BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+	int[] copyPixels = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+	
+	// The pixels are converted to packed RGB all at once.
+	image.getRGB(0, 0, image.getWidth(), image.getHeight(), copyPixels, 0, 
+		image.getWidth());
+	
+	return copy;
+    }
+    
+    /**
+     * This method checks whether an image is backed by an int array that holds
+     * just its own pixels, row by row, so the array can be used as it is. A
+     * subimage shares the whole array of the image it was cut from, so it is
+     * not.
+     * 
+     * @param image The image.
+     * @return True if the image's int array holds exactly its pixels.
+     */
+    static boolean isIntRaster(BufferedImage image)
+    {
+	WritableRaster raster = image.getRaster();
+	DataBuffer buffer = raster.getDataBuffer();
+	
+	return (image.getType() == BufferedImage.TYPE_INT_RGB 
+		|| image.getType() == BufferedImage.TYPE_INT_ARGB)
+		&& raster.getSampleModelTranslateX() == 0 
+		&& raster.getSampleModelTranslateY() == 0
+		&& buffer.getOffset() == 0
+		&& buffer.getSize() == image.getWidth() * image.getHeight();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,304 @@
+package rathbunfinal;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * This class compares two images of the same size in one pass over their
+ * pixels, split into bands that run in parallel. It finds the largest
+ * difference in any channel, the number of pixels that differ by more than a
+ * tolerance, the peak signal to noise ratio and the structural similarity
+ * (SSIM), so a test can ask for an exact match or for one that is close
+ * enough, like the result of a lossy encoder.
+ *
+ * The largest difference and the mismatches look at all four channels. PSNR
+ * and SSIM only look at the colors: PSNR over the red, green and blue
+ * channels and SSIM over the brightness, averaged over blocks of 8x8 pixels.
+ *
+ * @author Jared Rathbun
+ */
+public class ImageComparison
+{
+    // The width and height of the blocks SSIM is measured over.
+    private static final int BLOCK = 8;
+
+    // The constants that keep SSIM stable where the blocks are flat.
+    private static final double C1 = (0.01 * 255) * (0.01 * 255);
+    private static final double C2 = (0.03 * 255) * (0.03 * 255);
+
+    private final long pixels;         // The number of pixels compared.
+    private int maxDelta;              // The largest difference in a channel.
+    private long mismatches;           // The pixels that differ by more than the tolerance.
+    private long squaredError;         // The sum of the squared color differences.
+    private double ssim;               // The mean SSIM of the blocks.
+
+    /**
+     * Builds an empty comparison.
+     *
+     * @param pixels The number of pixels compared.
+     */
+    private ImageComparison(long pixels)
+    {
+        this.pixels = pixels;
+    }
+
+    /**
+     * This method compares two images exactly.
+     *
+     * @param expected The image that was expected.
+     * @param actual The image that was made.
+     * @return The comparison.
+     * @throws IllegalArgumentException if the images are not the same size.
+     */
+    public static ImageComparison compare(BufferedImage expected, BufferedImage actual)
+    {
+        return compare(expected, actual, 0);
+    }
+
+    /**
+     * This method compares two images, counting the pixels where a channel
+     * differs by more than the tolerance.
+     *
+     * @param expected The image that was expected.
+     * @param actual The image that was made.
+     * @param tolerance How much a channel may differ before the pixel is a
+     * mismatch, from 0 to 255.
+     * @return The comparison.
+     * @throws IllegalArgumentException if the images are not the same size.
+     */
+    public static ImageComparison compare(BufferedImage expected, BufferedImage actual,
+            int tolerance)
+    {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+
+        if (actual.getWidth() != width || actual.getHeight() != height)
+            throw new IllegalArgumentException("Images are " + width + "x" + height
+                    + " and " + actual.getWidth() + "x" + actual.getHeight());
+        if (tolerance < 0 || tolerance > 255)
+            throw new IllegalArgumentException("tolerance must be between 0 and 255");
+
+        int[] e = pixelsOf(expected);
+        int[] a = pixelsOf(actual);
+        int eMask = expected.getColorModel().hasAlpha() ? 0 : 0xFF000000;
+        int aMask = actual.getColorModel().hasAlpha() ? 0 : 0xFF000000;
+
+        int blockRows = (height + BLOCK - 1) / BLOCK;
+        int blockColumns = (width + BLOCK - 1) / BLOCK;
+
+        // Each row of blocks adds its own SSIM, so the sum is always made in
+        // the same order however the bands were split.
+        double[] rowSsim = new double[blockRows];
+        ImageComparison result = new ImageComparison((long) width * height);
+
+        TileScheduler.getDefault().forEachBand(blockRows, (first, last) ->
+        {
+            double[] sx = new double[blockColumns];   // The sums of each block.
+            double[] sy = new double[blockColumns];
+            double[] sxx = new double[blockColumns];
+            double[] syy = new double[blockColumns];
+            double[] sxy = new double[blockColumns];
+            int bandMax = 0;
+            long bandMismatches = 0;
+            long bandError = 0;
+
+            for (int by = first; by < last; by++)
+            {
+                Arrays.fill(sx, 0);
+                Arrays.fill(sy, 0);
+                Arrays.fill(sxx, 0);
+                Arrays.fill(syy, 0);
+                Arrays.fill(sxy, 0);
+
+                int top = by * BLOCK;
+                int bottom = Math.min(height, top + BLOCK);
+
+                for (int j = top; j < bottom; j++)
+                    for (int i = 0, p = j * width; i < width; i++, p++)
+                    {
+                        int x = e[p] | eMask;
+                        int y = a[p] | aMask;
+
+                        if (x != y)
+                        {
+                            int worst = 0;
+
+                            for (int shift = 0; shift < 32; shift += 8)
+                            {
+                                int d = Math.abs(((x >>> shift) & 0xFF)
+                                        - ((y >>> shift) & 0xFF));
+
+                                worst = Math.max(worst, d);
+                                if (shift < 24)
+                                    bandError += d * d;
+                            }
+
+                            bandMax = Math.max(bandMax, worst);
+                            if (worst > tolerance)
+                                bandMismatches++;
+                        }
+
+                        double lx = luma(x);
+                        double ly = luma(y);
+                        int b = i / BLOCK;
+
+                        sx[b] += lx;
+                        sy[b] += ly;
+                        sxx[b] += lx * lx;
+                        syy[b] += ly * ly;
+                        sxy[b] += lx * ly;
+                    }
+
+                double sum = 0;
+
+                for (int b = 0; b < blockColumns; b++)
+                {
+                    int n = (bottom - top) * (Math.min(width, (b + 1) * BLOCK) - b * BLOCK);
+                    double mx = sx[b] / n;
+                    double my = sy[b] / n;
+                    double vx = sxx[b] / n - mx * mx;
+                    double vy = syy[b] / n - my * my;
+                    double cov = sxy[b] / n - mx * my;
+
+                    sum += ((2 * mx * my + C1) * (2 * cov + C2))
+                            / ((mx * mx + my * my + C1) * (vx + vy + C2));
+                }
+
+                rowSsim[by] = sum;
+            }
+
+            synchronized (result)
+            {
+                result.maxDelta = Math.max(result.maxDelta, bandMax);
+                result.mismatches += bandMismatches;
+                result.squaredError += bandError;
+            }
+        });
+
+        double total = 0;
+
+        for (double s : rowSsim)
+            total += s;
+
+        result.ssim = total / ((long) blockRows * blockColumns);
+
+        return result;
+    }
+
+    /**
+     * This method returns the largest difference between the images in any
+     * channel of any pixel.
+     *
+     * @return The difference, from 0 to 255.
+     */
+    public int getMaxDelta()
+    {
+        return maxDelta;
+    }
+
+    /**
+     * This method returns the number of pixels where a channel differs by
+     * more than the tolerance.
+     *
+     * @return The number of pixels.
+     */
+    public long getMismatches()
+    {
+        return mismatches;
+    }
+
+    /**
+     * This method returns the mean squared difference of the red, green and
+     * blue channels.
+     *
+     * @return The mean squared error.
+     */
+    public double getMeanSquaredError()
+    {
+        return (double) squaredError / (3 * pixels);
+    }
+
+    /**
+     * This method returns the peak signal to noise ratio of the colors.
+     *
+     * @return The PSNR in decibels, or infinity if the colors are the same.
+     */
+    public double getPsnr()
+    {
+        if (squaredError == 0)
+            return Double.POSITIVE_INFINITY;
+
+        return 10 * Math.log10(255.0 * 255.0 / getMeanSquaredError());
+    }
+
+    /**
+     * This method returns the structural similarity of the images'
+     * brightness.
+     *
+     * @return The SSIM, 1 for images that look the same and less the more
+     * they differ.
+     */
+    public double getSsim()
+    {
+        return ssim;
+    }
+
+    /**
+     * This method checks whether every pixel is exactly the same.
+     *
+     * @return True if the images are identical.
+     */
+    public boolean isIdentical()
+    {
+        return maxDelta == 0;
+    }
+
+    /**
+     * This method checks whether the images are close enough: no pixel is a
+     * mismatch and the PSNR and SSIM are at least the given values.
+     *
+     * @param minPsnr The lowest PSNR allowed, in decibels.
+     * @param minSsim The lowest SSIM allowed.
+     * @return True if the images are close enough.
+     */
+    public boolean isWithin(double minPsnr, double minSsim)
+    {
+        return mismatches == 0 && getPsnr() >= minPsnr && ssim >= minSsim;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("max delta %d, %d mismatches, PSNR %.2f dB, SSIM %.4f",
+                maxDelta, mismatches, getPsnr(), ssim);
+    }
+
+    /**
+     * This method returns the brightness of a pixel.
+     *
+     * @param rgb The pixel.
+     * @return The brightness, from 0 to 255.
+     */
+    private static double luma(int rgb)
+    {
+        return 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF)
+                + 0.114 * (rgb & 0xFF);
+    }
+
+    /**
+     * This method returns the packed ARGB pixels of an image, converting
+     * images that are not backed by an int array of their own, like
+     * subimages.
+     *
+     * @param image The image.
+     * @return The pixels, row by row.
+     */
+    private static int[] pixelsOf(BufferedImage image)
+    {
+        if (!Image.isIntRaster(image))
+            image = Image.toIntRaster(image);
+
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,350 @@
+package rathbunfinal;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * This class writes images in the format named by the file's extension:
+ * JPEG, PNG, BMP, GIF or the raw .argb format. The JPEG quality, the PNG
+ * compression level and progressive output can be set. Each thread keeps its
+ * own ImageWriter for each format, so a batch sets up every writer once
+ * instead of once per image. Images can also be written to a stream in a
+ * named format. Every write reports how long the encoding took and how many
+ * bytes it made.
+ *
+ * @author Jared Rathbun
+ */
+public class ImageEncoder
+{
+    private final float jpegQuality;     // 0 to 1, or -1 for the default.
+    private final int pngCompression;    // 0 to 9, or -1 for the default.
+    private final boolean progressive;   // True for progressive or interlaced output.
+
+    // The writers made by each thread, by format.
+    private final ThreadLocal<Map<String, ImageWriter>> writers =
+            ThreadLocal.withInitial(HashMap::new);
+
+    // Every writer made, so they can be disposed of.
+    private final List<ImageWriter> allWriters = new CopyOnWriteArrayList<>();
+
+    /**
+     * The outcome of writing one image.
+     */
+    public static class Result
+    {
+        private final String format;  // The format written.
+        private final long bytes;     // The size of the file.
+        private final long nanos;     // The time spent encoding.
+
+        Result(String format, long bytes, long nanos)
+        {
+            this.format = format;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return The format that was written, like "jpg" or "png".
+         */
+        public String getFormat()
+        {
+            return format;
+        }
+
+        /**
+         * @return The size of the file in bytes.
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        /**
+         * @return The time spent encoding and writing, in nanoseconds.
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s, %d bytes in %.1f ms", format, bytes, nanos / 1e6);
+        }
+    }
+
+    /**
+     * Builds an encoder that uses every format's default settings.
+     */
+    public ImageEncoder()
+    {
+        this(-1, -1, false);
+    }
+
+    /**
+     * Builds an encoder.
+     *
+     * @param jpegQuality The JPEG quality from 0 to 1, or -1 for the default.
+     * @param pngCompression The PNG compression level from 0 (none, fastest)
+     * to 9 (smallest), or -1 for the default.
+     * @param progressive True to write progressive JPEGs and interlaced PNGs.
+     */
+    public ImageEncoder(float jpegQuality, int pngCompression, boolean progressive)
+    {
+        if (jpegQuality != -1 && (jpegQuality < 0 || jpegQuality > 1))
+            throw new IllegalArgumentException("JPEG quality must be between 0 and 1");
+        if (pngCompression < -1 || pngCompression > 9)
+            throw new IllegalArgumentException("PNG compression must be between 0 and 9");
+
+        this.jpegQuality = jpegQuality;
+        this.pngCompression = pngCompression;
+        this.progressive = progressive;
+    }
+
+    /**
+     * This method builds an encoder from the command line options
+     * --quality=0..100, --png-compression=0..9 and --progressive.
+     *
+     * @param options The command line options.
+     * @return The encoder.
+     * @throws IllegalArgumentException if an option is out of range.
+     */
+    public static ImageEncoder fromOptions(Options options)
+    {
+        int quality = options.getInt("quality", -1);
+
+        if (quality != -1 && (quality < 0 || quality > 100))
+            throw new IllegalArgumentException("--quality must be between 0 and 100");
+
+        return new ImageEncoder((quality == -1) ? -1 : quality / 100f,
+                options.getInt("png-compression", -1), options.has("progressive"));
+    }
+
+    /**
+     * This method picks the format from a file name's extension.
+     *
+     * @param file The file being written.
+     * @return The format, like "jpg", "png" or "argb".
+     */
+    public static String formatOf(File file)
+    {
+        String name = file.getName();
+        String ext = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+
+        switch (ext)
+        {
+            case "jpeg":
+                return "jpg";
+            case "tiff":
+                return "tif";
+            default:
+                return ext;
+        }
+    }
+
+    /**
+     * This method writes an image in the format named by the file's
+     * extension. JPEG and BMP have no alpha channel, so it is dropped from
+     * images that have one.
+     *
+     * @param image The image to write.
+     * @param file The file to write.
+     * @return The format, size and encoding time.
+     * @throws IOException if there is no writer for the format or the file
+     * cannot be written.
+     */
+    public Result write(BufferedImage image, File file) throws IOException
+    {
+        String format = formatOf(file);
+        Metrics.Sample sample = Metrics.start("encode");
+        long start = System.nanoTime();
+
+        if (format.equals(RawImage.EXTENSION))
+            RawImage.write(image, file);
+        else
+        {
+            // The stream does not truncate the file, so it is removed first.
+            Files.deleteIfExists(file.toPath());
+
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(file))
+            {
+                encode(image, format, out);
+            }
+        }
+
+        long nanos = System.nanoTime() - start;
+        Metrics.stop(sample, (long) image.getWidth() * image.getHeight());
+
+        return new Result(format, file.length(), nanos);
+    }
+
+    /**
+     * This method writes an image to a stream, like the body of a network
+     * response. The stream is buffered in memory rather than in a temporary
+     * file, and is flushed but not closed. The raw format can only be
+     * written to a file.
+     *
+     * @param image The image to write.
+     * @param format The format, like "jpg" or "png".
+     * @param out The stream to write to.
+     * @return The format, size and encoding time.
+     * @throws IOException if there is no writer for the format or the stream
+     * cannot be written.
+     */
+    public Result write(BufferedImage image, String format, OutputStream out)
+            throws IOException
+    {
+        if (format.equals(RawImage.EXTENSION))
+            throw new IOException("Raw images can only be written to a file");
+
+        Metrics.Sample sample = Metrics.start("encode");
+        long start = System.nanoTime();
+        long bytes;
+
+        try (ImageOutputStream stream = new MemoryCacheImageOutputStream(out))
+        {
+            encode(image, format, stream);
+            bytes = stream.getStreamPosition();
+        }
+
+        long nanos = System.nanoTime() - start;
+        Metrics.stop(sample, (long) image.getWidth() * image.getHeight());
+
+        return new Result(format, bytes, nanos);
+    }
+
+    /**
+     * This method disposes of the writers. The encoder can still be used
+     * afterwards, new writers are made as needed.
+     */
+    public void close()
+    {
+        for (ImageWriter writer : allWriters)
+            writer.dispose();
+
+        allWriters.clear();
+        writers.remove();
+    }
+
+    /**
+     * This method encodes an image with this thread's writer for the format.
+     *
+     * @param image The image to write.
+     * @param format The format.
+     * @param out The stream to write to.
+     * @throws IOException if there is no writer for the format or the stream
+     * cannot be written.
+     */
+    private void encode(BufferedImage image, String format, ImageOutputStream out)
+            throws IOException
+    {
+        if ((format.equals("jpg") || format.equals("bmp"))
+                && image.getColorModel().hasAlpha())
+            image = dropAlpha(image);
+
+        ImageWriter writer = writerFor(format);
+
+        try
+        {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), paramFor(writer, format));
+        } finally
+        {
+            writer.reset();
+        }
+    }
+
+    /**
+     * This method returns this thread's writer for a format, making it the
+     * first time.
+     *
+     * @param format The format.
+     * @return The writer.
+     * @throws IOException if there is no writer for the format.
+     */
+    private ImageWriter writerFor(String format) throws IOException
+    {
+        Map<String, ImageWriter> mine = writers.get();
+        ImageWriter writer = mine.get(format);
+
+        // A writer disposed of by close is replaced.
+        if (writer == null || !allWriters.contains(writer))
+        {
+            Iterator<ImageWriter> found = ImageIO.getImageWritersBySuffix(format);
+
+            if (!found.hasNext())
+                throw new IOException("No writer for " + format);
+
+            writer = found.next();
+            mine.put(format, writer);
+            allWriters.add(writer);
+        }
+
+        return writer;
+    }
+
+    /**
+     * This method returns the write settings for a format.
+     *
+     * @param writer The writer.
+     * @param format The format.
+     * @return The settings.
+     */
+    private ImageWriteParam paramFor(ImageWriter writer, String format)
+    {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+
+        if (progressive && param.canWriteProgressive())
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+
+        if (format.equals("jpg") && jpegQuality != -1)
+        {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+        }
+        else if (format.equals("png") && pngCompression != -1)
+        {
+            // The PNG writer turns quality q into deflate level 9 * (1 - q),
+            // rounded down, so the half keeps float error from losing a level.
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(Math.max(0f, 1f - (pngCompression + 0.5f) / 9f));
+        }
+
+        return param;
+    }
+
+    /**
+     * This method copies an image without its alpha channel.
+     *
+     * @param image An image with an alpha channel.
+     * @return An opaque TYPE_INT_RGB copy.
+     */
+    private static BufferedImage dropAlpha(BufferedImage image)
+    {
+        BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) opaque.getRaster().getDataBuffer()).getData();
+
+        image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixels, 0,
+                image.getWidth());
+
+        return opaque;
+    }
+}
@@ -8,7 +8,6 @@ package rathbunfinal;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -16,12 +15,37 @@ import javax.swing.filechooser.FileNameExtensionFilter;
  
 public class ImageFinal
 {
-    public static void main(String[] args) throws IOException
+    public static void main(String[] args) throws IOException, InterruptedException
     {
-	if (args.length == 0 || validOperations(args) == false)
+	Options options = Options.parse(args);
+	String[] ops = options.getOperations();
+	
+	if ((ops.length == 0 && !options.has("edit") && !options.has("serve")) 
+		|| validOperations(ops) == false)
+	{
+	    HeadlessLauncher.printUsage();
+	    return;
+	}
+	
+	// The stages are only timed when asked for.
+	String report = options.get("metrics", null);
+	if (report != null)
+	    Metrics.setEnabled(true);
+	
+	// The editor previews the operations and lets the user change them.
+	if (options.has("edit"))
 	{
-	    System.out.println("Usage: imagemanip [ grayscale | addframe "
-		    + "| addsticker | cartoonify | negative ]");
+	    File file = promptForFile("Select Image");
+	    
+	    if (file != null)
+		Editor.open(file, options);
+	    return;
+	}
+	
+	// Batch, streaming, server and single file jobs never open a window.
+	if (HeadlessLauncher.accepts(options))
+	{
+	    HeadlessLauncher.launch(options);
 	    return;
 	}
 	
@@ -29,7 +53,8 @@ public class ImageFinal
 	Image img = new Image(promptForFile("Select Image"));
 	
 	// The operations specified in the command line are performed on the image.
-	processOperations(img, args);
+	processOperations(img, options);
+	HeadlessLauncher.writeMetrics(report);
 
 	// The image is displayed.
 	Display.displayImage(img);
@@ -37,6 +62,7 @@ public class ImageFinal
     
     /**
      * This method processes all of the operations specified from the command line.
+     * Neighboring pixel operations are fused so they share one pass over the image.
      * 
      * @param image The image the user enters.
      * @param ops The command line arguments.
@@ -44,39 +70,47 @@ public class ImageFinal
      */
     public static void processOperations(Image image, String[] ops) throws IOException
     {
-	assert (ops.length != 0);
+	processOperations(image, Options.parse(ops));
+    }
+    
+    /**
+     * This method processes all of the operations specified from the command line.
+     * Neighboring pixel operations are fused so they share one pass over the image.
+     * 
+     * @param image The image the user enters.
+     * @param options The command line options and operations.
+     * @throws IOException 
+     */
+    public static void processOperations(Image image, Options options) 
+	    throws IOException
+    {
+	assert (options.getOperations().length != 0);
+	
+	boolean blend = options.has("blend"); // Blend partly transparent pixels.
 	
-	for (String task : ops)
+	// If the frame is bigger than the image, a message box is displayed.
+	Pipeline.Stage addFrame = img -> 
 	{
-	    switch (task)
+	    if (img.addFrame(promptForFile("Select Frame"), blend) == false)
 	    {
-		case "grayscale":  
-		    image.toGrayScale();
-		    break;   
-		case "addframe":  
-		    // If the frame is bigger than the image, a message box is displayed.
-		    if (image.addFrame(promptForFile("Select Frame")) == false)
-		    {
-		      JOptionPane.showMessageDialog(null,"Frame is too big");
-		      System.exit(0);
-		    } 
-		    break;
-		case "addsticker": 		    
-		    // If the frame is bigger than the image, a message box is displayed.
-		    if (image.addSticker(promptForFile("Select Sticker")) == false)
-		    {
-		      JOptionPane.showMessageDialog(null,"Sticker is too big");
-		      System.exit(0);
-		    }
-		    break;
-		case "cartoonify": 
-		    image.cartoonify();
-		    break;
-		case "negative":
-		    image.negativeImage();
-		    break;
+	      JOptionPane.showMessageDialog(null,"Frame is too big");
+	      System.exit(0);
 	    }
-	}
+	};
+	
+	// If the sticker is bigger than the image, a message box is displayed.
+	Pipeline.Stage addSticker = img -> 
+	{
+	    if (img.addSticker(promptForFile("Select Sticker"), blend) == false)
+	    {
+	      JOptionPane.showMessageDialog(null,"Sticker is too big");
+	      System.exit(0);
+	    }
+	};
+	
+	Pipeline pipeline = Pipeline.compile(options, addFrame, addSticker);
+	
+	pipeline.run(image);
     }
     
     /**
@@ -87,15 +121,14 @@ public class ImageFinal
      */
     public static boolean validOperations(String[] operations)
     {
-	assert (operations.length >= 0) && (operations.length <= 4);
+	// Any number of operations can be chained.
+	assert (operations != null);
 	
 	int count = 0; // A counter.
 	
 	for (int i = 0; i < operations.length; i++)
 	{
-	    if (operations[i].equals("grayscale") || operations[i].equals("addframe") || 
-		   operations[i].equals("addsticker") || operations[i].equals("cartoonify")
-		    || operations[i].equals("negative"))
+	    if (Pipeline.isOperation(operations[i]))
 		count++;
 	}
 	
@@ -112,7 +145,7 @@ public class ImageFinal
     {
 	assert (!msg.equals(""));
 	
-	String[] fileExtensions = {"jpg", "gif", "png"}; // The accepted file types.
+	String[] fileExtensions = {"jpg", "gif", "png", RawImage.EXTENSION}; // The accepted file types.
 	JFileChooser display = new JFileChooser(); // The object for the file chooser.
 	
 	FileNameExtensionFilter fileFilter = 
@@ -131,7 +164,10 @@ public class ImageFinal
     }
     
     /**
-     * This method saves the image to a path the user selects.
+     * This method saves the image to a path the user selects. The format is
+     * picked by the file's extension: jpg, png, bmp, or argb for a raw image
+     * that keeps every pixel exactly as it is for the next run of the program.
+     * A name without an extension is saved as a JPEG.
      * 
      * @param img The image the user is going to save.
      * @throws IOException 
@@ -140,6 +176,21 @@ public class ImageFinal
     {
 	assert (img != null);
 	
+	File file = chooseSaveFile();
+	
+	if (file != null)
+	    writeImage(img, file);
+    }
+    
+    /**
+     * This method asks the user where to save an image. It must be called on
+     * the event dispatch thread.
+     * 
+     * @return The file the user picked, with .jpg added if it has no
+     * extension, or null if the user cancelled.
+     */
+    public static File chooseSaveFile()
+    {
 	String[] fileExtensions = {"jpg"}; // The file type the image will be saved as.
 	JFileChooser display = new JFileChooser(); // The object for the file chooser.
 	
@@ -147,10 +198,43 @@ public class ImageFinal
                 new FileNameExtensionFilter("JPG",fileExtensions);
 	
 	display.setFileFilter(fileFilter); // The file filter is applied.
+	display.addChoosableFileFilter(new FileNameExtensionFilter("PNG", "png"));
+	display.addChoosableFileFilter(new FileNameExtensionFilter("BMP", "bmp"));
+	display.addChoosableFileFilter(new FileNameExtensionFilter(
+		"Raw ARGB", RawImage.EXTENSION));
+	
+        // The file is only returned if the user hits "OK".
+	if (display.showSaveDialog(null) != JFileChooser.APPROVE_OPTION)
+	    return null;
+	
+	File file = display.getSelectedFile();
 	
-        // The image is saved and written to specified location if the user hits "OK".
-	if (display.showSaveDialog(null) == JFileChooser.APPROVE_OPTION)
-            ImageIO.write(img,"jpg",display.getSelectedFile());
+	if (file.getName().indexOf('.') < 0)
+	    file = new File(file.getPath() + ".jpg");
+	
+	return file;
+    }
+    
+    /**
+     * This method encodes an image and writes it to a file, in the format
+     * named by the file's extension. It can take a while for a big image, so
+     * the editor calls it off the event dispatch thread.
+     * 
+     * @param img The image.
+     * @param file The file to write.
+     * @throws IOException if the image cannot be written.
+     */
+    public static void writeImage(BufferedImage img, File file) throws IOException
+    {
+	ImageEncoder encoder = new ImageEncoder();
+	
+	try
+	{
+	    System.out.println(file + ": " + encoder.write(img, file));
+	} finally
+	{
+	    encoder.close();
+	}
     }
 
 }
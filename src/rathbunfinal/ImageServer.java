@@ -0,0 +1,506 @@
+package rathbunfinal;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * This class keeps the program running as a local HTTP server, so the cost
+ * of starting the JVM, loading the classes, compiling the hot loops and
+ * reading the palette, frame and sticker is paid once instead of once per
+ * image. An image is processed by posting it to /process with the
+ * operations in the query:
+ *
+ *     POST /process?ops=grayscale,cartoonify&colors=16&format=png
+ *
+ * The result is encoded straight into the response. Requests are handled by
+ * a fixed pool of worker threads. Each one reserves the memory for its body
+ * before the body is read, and the memory its image will need before it is
+ * decoded. A request that cannot get its memory in time is turned away with
+ * 503, so a burst of big images cannot run the server out of memory. A body
+ * sent without a Content-Length can use at most an equal share of the memory
+ * for each worker. The server only listens on the loopback address.
+ *
+ * @author Jared Rathbun
+ */
+public class ImageServer
+{
+    // The path images are posted to.
+    public static final String PATH = "/process";
+
+    // The options a request can set in its query, besides ops and format.
+    private static final Set<String> REQUEST_OPTIONS = new HashSet<>(Arrays.asList(
+            "blend", "metric", "colors", "dither", "outline", "sigma", "box", "amount"));
+
+    // The memory reserved for each pixel: the decoded image, the image's own
+    // copy and a working copy for the convolutions or the encoder.
+    private static final int BYTES_PER_PIXEL = 12;
+
+    // How long a request waits for memory before it is turned away.
+    private static final long MEMORY_WAIT_MILLIS = 10_000;
+
+    private final HttpServer server;        // Accepts the connections.
+    private final ExecutorService workers;  // Runs the requests.
+    private final ImageEncoder encoder;     // Writes the results.
+    private final File frame;               // The frame for "addframe", or null.
+    private final File sticker;             // The sticker for "addsticker", or null.
+    private final Semaphore memory;         // The memory left, in kilobytes.
+    private final int memoryKilobytes;      // The memory for all requests, in kilobytes.
+    private final int unsizedKilobytes;     // The most a body with no length can use.
+
+    private final AtomicInteger served = new AtomicInteger();   // Images sent back.
+    private final AtomicInteger rejected = new AtomicInteger(); // Requests turned away.
+
+    /**
+     * Builds a server. It does not accept requests until it is started.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param workers The number of threads that run requests.
+     * @param maxMemory The most bytes the requests in flight can use.
+     * @param encoder Writes the results.
+     * @param frame The frame for "addframe", or null if there is none.
+     * @param sticker The sticker for "addsticker", or null if there is none.
+     * @throws IOException if the port cannot be opened.
+     */
+    public ImageServer(int port, int workers, long maxMemory, ImageEncoder encoder,
+            File frame, File sticker) throws IOException
+    {
+        assert (encoder != null);
+
+        if (workers < 1)
+            throw new IllegalArgumentException("thread count must be at least 1");
+        if (maxMemory < 1024)
+            throw new IllegalArgumentException("memory must be at least 1 KB");
+
+        this.encoder = encoder;
+        this.frame = frame;
+        this.sticker = sticker;
+        this.memoryKilobytes = (int) Math.min(Integer.MAX_VALUE, maxMemory / 1024);
+        this.memory = new Semaphore(memoryKilobytes, true);
+        this.unsizedKilobytes = Math.max(1, memoryKilobytes / workers);
+        this.workers = Executors.newFixedThreadPool(workers,
+                BatchProcessor.namedThreads("serve"));
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                port), 0);
+        server.setExecutor(this.workers);
+        server.createContext(PATH, this::handle);
+    }
+
+    /**
+     * This method runs the server described by the command line options. It
+     * returns once the server is listening, and the server keeps the program
+     * running until it is killed.
+     *
+     * @param options The command line options.
+     * @return The exit status, 0 if the server started.
+     * @throws IOException if the port cannot be opened.
+     */
+    public static int run(Options options) throws IOException
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        // Every worker already keeps a core busy, so the kernels run on one
+        // thread each unless told otherwise.
+        TileScheduler.setParallelism(options.getInt("threads", 1));
+
+        // Half the heap is left for everything else by default.
+        long maxMemory = options.getInt("max-memory",
+                (int) (Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024))) * 1024L * 1024L;
+
+        ImageServer server = new ImageServer(options.getInt("port", 8080),
+                options.getInt("workers", processors), maxMemory,
+                ImageEncoder.fromOptions(options),
+                BatchProcessor.fileOption(options, "frame"),
+                BatchProcessor.fileOption(options, "sticker"));
+
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        System.out.println("Listening on http://localhost:" + server.getPort() + PATH);
+
+        return 0;
+    }
+
+    /**
+     * This method starts accepting requests.
+     */
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     * This method stops accepting requests and ends the ones in flight.
+     */
+    public void stop()
+    {
+        server.stop(0);
+        workers.shutdownNow();
+        encoder.close();
+    }
+
+    /**
+     * This method returns the port the server listens on.
+     *
+     * @return The port.
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * This method returns the number of images sent back so far.
+     *
+     * @return The number of images sent back.
+     */
+    public int getServed()
+    {
+        return served.get();
+    }
+
+    /**
+     * This method returns the number of requests turned away so far because
+     * there was not enough memory.
+     *
+     * @return The number of requests turned away.
+     */
+    public int getRejected()
+    {
+        return rejected.get();
+    }
+
+    /**
+     * This method answers one request. Nothing is read until the request is
+     * known to be good and the memory for its body has been reserved.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            if (!exchange.getRequestMethod().equals("POST"))
+            {
+                reply(exchange, 405, "Images must be sent with POST");
+                return;
+            }
+
+            Options options;
+            String format;
+            Pipeline pipeline;
+
+            try
+            {
+                options = parseQuery(exchange.getRequestURI().getRawQuery());
+                format = options.get("format", "png").toLowerCase(Locale.ROOT);
+
+                if (!ImageIO.getImageWritersBySuffix(format).hasNext())
+                    throw new IllegalArgumentException("No writer for " + format);
+
+                pipeline = BatchProcessor.compile(options, frame, sticker);
+            } catch (IllegalArgumentException ex)
+            {
+                reply(exchange, 400, ex.getMessage());
+                return;
+            } catch (IOException | UncheckedIOException ex)
+            {
+                // The request is fine, but the server's palette is missing or bad.
+                reply(exchange, 500, String.valueOf(ex.getMessage()));
+                return;
+            }
+
+            long length;
+
+            try
+            {
+                String header = exchange.getRequestHeaders().getFirst("Content-Length");
+                length = (header == null) ? -1 : Long.parseLong(header);
+            } catch (NumberFormatException ex)
+            {
+                reply(exchange, 400, "Bad Content-Length");
+                return;
+            }
+
+            // A body that says it is too big is not read at all.
+            long bodyKilobytes = (length < 0) ? unsizedKilobytes : (length + 1023) / 1024;
+
+            if (bodyKilobytes > memoryKilobytes)
+            {
+                reply(exchange, 413, "The image is too big");
+                return;
+            }
+
+            if (!reserve(exchange, (int) bodyKilobytes))
+                return;
+
+            try
+            {
+                byte[] body = readBody(exchange, 1024L * bodyKilobytes);
+
+                if (body == null)
+                {
+                    reply(exchange, 413, "The image is too big");
+                    return;
+                }
+
+                process(exchange, body, (int) bodyKilobytes, pipeline, format);
+            } finally
+            {
+                memory.release((int) bodyKilobytes);
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        } finally
+        {
+            exchange.close();
+        }
+    }
+
+    /**
+     * This method decodes, processes and sends back one image once its
+     * memory has been reserved. The memory is estimated from the size in the
+     * image's header, so an image too big to ever fit is turned away without
+     * being decoded.
+     *
+     * @param exchange The request and its response.
+     * @param body The encoded image.
+     * @param bodyKilobytes The memory already reserved for the body.
+     * @param pipeline The operations to run.
+     * @param format The format to send back.
+     * @throws IOException if the response cannot be sent.
+     * @throws InterruptedException if the wait for memory is interrupted.
+     */
+    private void process(HttpExchange exchange, byte[] body, int bodyKilobytes,
+            Pipeline pipeline, String format) throws IOException, InterruptedException
+    {
+        ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(body));
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+
+        if (!readers.hasNext())
+        {
+            in.close();
+            reply(exchange, 415, "The body is not an image");
+            return;
+        }
+
+        ImageReader reader = readers.next();
+
+        try
+        {
+            reader.setInput(in, true, true);
+
+            long bytes = (long) BYTES_PER_PIXEL * reader.getWidth(0) * reader.getHeight(0);
+            long kilobytes = (bytes + 1023) / 1024;
+
+            if (kilobytes > memoryKilobytes - bodyKilobytes)
+            {
+                reply(exchange, 413, "The image is too big");
+                return;
+            }
+
+            if (!reserve(exchange, (int) kilobytes))
+                return;
+
+            try
+            {
+                send(exchange, decode(reader), pipeline, format);
+            } finally
+            {
+                memory.release((int) kilobytes);
+            }
+        } catch (IOException | RuntimeException ex)
+        {
+            // Once the image has started going out there is no way to
+            // report an error but to cut the response short.
+            if (exchange.getResponseCode() == -1)
+                reply(exchange, 422, String.valueOf(ex.getMessage()));
+            else
+                throw ex;
+        } finally
+        {
+            reader.dispose();
+            in.close();
+        }
+    }
+
+    /**
+     * This method reserves memory for a request, waiting a while for it, and
+     * turns the request away with 503 if it cannot be had.
+     *
+     * @param exchange The request and its response.
+     * @param kilobytes The memory to reserve, in kilobytes.
+     * @return True if the memory was reserved, false if the request was
+     * turned away.
+     * @throws IOException if the response cannot be sent.
+     * @throws InterruptedException if the wait for memory is interrupted.
+     */
+    private boolean reserve(HttpExchange exchange, int kilobytes)
+            throws IOException, InterruptedException
+    {
+        if (memory.tryAcquire(kilobytes, MEMORY_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+            return true;
+
+        rejected.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        reply(exchange, 503, "The server is busy");
+
+        return false;
+    }
+
+    /**
+     * This method decodes an image with a reader that already has its input.
+     *
+     * @param reader The reader.
+     * @return The image.
+     * @throws IOException if the image cannot be decoded.
+     */
+    private static Image decode(ImageReader reader) throws IOException
+    {
+        Metrics.Sample sample = Metrics.start("decode");
+        BufferedImage decoded = reader.read(0);
+        Metrics.stop(sample, (long) decoded.getWidth() * decoded.getHeight());
+
+        return new Image(decoded);
+    }
+
+    /**
+     * This method runs the pipeline and encodes the result into the response
+     * as it is made, without knowing its length ahead of time.
+     *
+     * @param exchange The request and its response.
+     * @param img The image.
+     * @param pipeline The operations to run.
+     * @param format The format to send back.
+     * @throws IOException if the image cannot be processed or sent.
+     */
+    private void send(HttpExchange exchange, Image img, Pipeline pipeline, String format)
+            throws IOException
+    {
+        pipeline.run(img);
+
+        exchange.getResponseHeaders().set("Content-Type",
+                "image/" + (format.equals("jpg") ? "jpeg" : format));
+        exchange.sendResponseHeaders(200, 0);
+
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            encoder.write(img.getImage(), format, out);
+        }
+
+        served.incrementAndGet();
+    }
+
+    /**
+     * This method turns a query like ops=grayscale,negative&amp;metric=lab into
+     * options and operations.
+     *
+     * @param query The raw query, or null if there is none.
+     * @return The options and operations.
+     * @throws IllegalArgumentException if an operation or option is unknown.
+     */
+    static Options parseQuery(String query)
+    {
+        List<String> args = new ArrayList<>();
+        List<String> ops = new ArrayList<>();
+
+        if (query != null && !query.isEmpty())
+        {
+            for (String pair : query.split("&"))
+            {
+                int equals = pair.indexOf('=');
+                String name = URLDecoder.decode((equals < 0) ? pair
+                        : pair.substring(0, equals), StandardCharsets.UTF_8);
+                String value = (equals < 0) ? null
+                        : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+
+                if (name.equals("ops") && value != null)
+                    ops.addAll(Arrays.asList(value.split(",")));
+                else if (name.equals("format") || REQUEST_OPTIONS.contains(name))
+                    args.add((value == null) ? "--" + name : "--" + name + "=" + value);
+                else
+                    throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+
+        if (ops.isEmpty())
+            throw new IllegalArgumentException("No operations were given");
+
+        for (String op : ops)
+            if (!Pipeline.isOperation(op))
+                throw new IllegalArgumentException("Unknown operation: " + op);
+
+        args.addAll(ops);
+
+        return Options.parse(args.toArray(new String[0]));
+    }
+
+    /**
+     * This method reads the body of a request, as long as it is not too big.
+     *
+     * @param exchange The request.
+     * @param limit The most bytes the body can have.
+     * @return The body, or null if it is bigger than the limit.
+     * @throws IOException if the body cannot be read.
+     */
+    private static byte[] readBody(HttpExchange exchange, long limit) throws IOException
+    {
+        int max = (int) Math.min(limit, Integer.MAX_VALUE - 8);
+
+        try (InputStream in = exchange.getRequestBody())
+        {
+            byte[] body = in.readNBytes(max);
+
+            return (in.read() == -1) ? body : null;
+        }
+    }
+
+    /**
+     * This method sends a short plain text response.
+     *
+     * @param exchange The request and its response.
+     * @param status The HTTP status code.
+     * @param message The message.
+     * @throws IOException if the response cannot be sent.
+     */
+    private static void reply(HttpExchange exchange, int status, String message)
+            throws IOException
+    {
+        byte[] text = (message + "\n").getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, text.length);
+
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(text);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package rathbunfinal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class picks a palette for an image with the median cut algorithm. A
+ * grid of pixels is sampled in parallel bands into a histogram of 15-bit
+ * colors. The box holding all of the sampled colors is then split at the
+ * median of its longest side, over and over, until there is one box per
+ * palette color. Each color is the mean of the pixels in its box. The
+ * histogram is a sum, so the palette does not depend on the number of
+ * threads.
+ *
+ * @author Jared Rathbun
+ */
+public class MedianCut
+{
+    // About how many pixels are sampled from an image.
+    public static final int SAMPLES = 1 << 18;
+
+    // The bits kept of each channel in the histogram.
+    private static final int BITS = 5;
+
+    // The number of histogram bins.
+    private static final int BINS = 1 << (3 * BITS);
+
+    /**
+     * This class only holds static methods.
+     */
+    private MedianCut()
+    {
+    }
+
+    /**
+     * This method picks a palette for the pixels of an image.
+     *
+     * @param pixels The ARGB pixels, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param colors The most colors the palette may have, at least 1.
+     * @return The palette. It has fewer colors than asked for if the image
+     * does not have that many different colors.
+     */
+    public static int[] palette(int[] pixels, int width, int height, int colors)
+    {
+        if (colors < 1 || colors >= Short.MAX_VALUE)
+            throw new IllegalArgumentException("colors must be between 1 and "
+                    + (Short.MAX_VALUE - 1));
+
+        Histogram histogram = sample(pixels, width, height);
+        List<Box> boxes = new ArrayList<>();
+        int[] bins = histogram.nonEmptyBins();
+        boxes.add(new Box(histogram, bins, 0, bins.length));
+
+        while (boxes.size() < colors)
+        {
+            Box widest = null;
+
+            // The box with the most pixels times the length of its longest
+            // side is split next.
+            for (Box box : boxes)
+                if (box.canSplit() && (widest == null
+                        || box.priority() > widest.priority()))
+                    widest = box;
+
+            if (widest == null)
+                break;
+
+            boxes.remove(widest);
+            boxes.addAll(widest.split());
+        }
+
+        int[] palette = new int[boxes.size()];
+
+        for (int k = 0; k < palette.length; k++)
+            palette[k] = boxes.get(k).mean();
+
+        return palette;
+    }
+
+    /**
+     * This method counts a grid of the image's pixels into a histogram, one
+     * band of rows per task.
+     *
+     * @param pixels The ARGB pixels, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The histogram of the sampled pixels.
+     */
+    private static Histogram sample(int[] pixels, int width, int height)
+    {
+        // The distance between sampled pixels, across and down.
+        int step = Math.max(1, (int) Math.sqrt((double) width * height / SAMPLES));
+        Histogram total = new Histogram();
+
+        TileScheduler.getDefault().forEachBand(height, (first, last) ->
+        {
+            Histogram band = new Histogram();
+            int start = first + Math.floorMod(-first, step);
+
+            for (int j = start; j < last; j += step)
+                for (int i = 0, p = j * width; i < width; i += step, p += step)
+                    band.add(pixels[p]);
+
+            synchronized (total)
+            {
+                total.addAll(band);
+            }
+        });
+
+        return total;
+    }
+
+    /**
+     * The number of sampled pixels in each bin and the sums of their channels.
+     */
+    private static class Histogram
+    {
+        private final int[] count = new int[BINS];
+        private final long[] red = new long[BINS];
+        private final long[] green = new long[BINS];
+        private final long[] blue = new long[BINS];
+
+        /**
+         * Counts one pixel.
+         */
+        void add(int rgb)
+        {
+            int r = PixelColor.getRedChannel(rgb);
+            int g = PixelColor.getGreenChannel(rgb);
+            int b = PixelColor.getBlueChannel(rgb);
+            int bin = binOf(r, g, b);
+
+            count[bin]++;
+            red[bin] += r;
+            green[bin] += g;
+            blue[bin] += b;
+        }
+
+        /**
+         * Adds the counts of another histogram to this one.
+         */
+        void addAll(Histogram other)
+        {
+            for (int bin = 0; bin < BINS; bin++)
+            {
+                count[bin] += other.count[bin];
+                red[bin] += other.red[bin];
+                green[bin] += other.green[bin];
+                blue[bin] += other.blue[bin];
+            }
+        }
+
+        /**
+         * Returns the bins that have at least one pixel, in order.
+         */
+        int[] nonEmptyBins()
+        {
+            int n = 0;
+
+            for (int bin = 0; bin < BINS; bin++)
+                if (count[bin] > 0)
+                    n++;
+
+            int[] bins = new int[n];
+            n = 0;
+
+            for (int bin = 0; bin < BINS; bin++)
+                if (count[bin] > 0)
+                    bins[n++] = bin;
+
+            return bins;
+        }
+
+        /**
+         * Returns the bin of a color.
+         */
+        static int binOf(int r, int g, int b)
+        {
+            int shift = 8 - BITS;
+
+            return ((r >> shift) << (2 * BITS)) | ((g >> shift) << BITS) | (b >> shift);
+        }
+
+        /**
+         * Returns one channel of a bin, 0 for red, 1 for green and 2 for blue.
+         */
+        static int channelOf(int bin, int channel)
+        {
+            return (bin >> ((2 - channel) * BITS)) & ((1 << BITS) - 1);
+        }
+    }
+
+    /**
+     * A box of the color cube, made of the bins from lo up to hi of an array.
+     */
+    private static class Box
+    {
+        private final Histogram histogram; // The counts of the bins.
+        private final int[] bins;          // The bins, shared with other boxes.
+        private final int lo;              // The first bin of the box.
+        private final int hi;              // One past the last bin of the box.
+        private final long population;     // The pixels in the box.
+        private final int longest;         // The channel the box is longest in.
+        private final int length;          // The length of that side.
+
+        Box(Histogram histogram, int[] bins, int lo, int hi)
+        {
+            this.histogram = histogram;
+            this.bins = bins;
+            this.lo = lo;
+            this.hi = hi;
+
+            long pixels = 0;
+            int[] min = {BINS, BINS, BINS};
+            int[] max = {-1, -1, -1};
+
+            for (int n = lo; n < hi; n++)
+            {
+                pixels += histogram.count[bins[n]];
+
+                for (int c = 0; c < 3; c++)
+                {
+                    min[c] = Math.min(min[c], Histogram.channelOf(bins[n], c));
+                    max[c] = Math.max(max[c], Histogram.channelOf(bins[n], c));
+                }
+            }
+
+            int side = 0;
+
+            for (int c = 1; c < 3; c++)
+                if (max[c] - min[c] > max[side] - min[side])
+                    side = c;
+
+            population = pixels;
+            longest = side;
+            length = max[side] - min[side];
+        }
+
+        boolean canSplit()
+        {
+            return hi - lo > 1;
+        }
+
+        long priority()
+        {
+            return population * (length + 1);
+        }
+
+        /**
+         * Splits the box in two at the median of its longest side.
+         */
+        List<Box> split()
+        {
+            int middle = median();
+
+            return List.of(new Box(histogram, bins, lo, middle),
+                    new Box(histogram, bins, middle, hi));
+        }
+
+        /**
+         * Sorts the bins along the longest side and returns the position that
+         * splits the pixels in half. Both halves get at least one bin.
+         */
+        private int median()
+        {
+            // Counting sort on the longest channel keeps bins of equal
+            // channel in their original order, so the split is repeatable.
+            int[] sorted = new int[hi - lo];
+            int[] starts = new int[(1 << BITS) + 1];
+
+            for (int n = lo; n < hi; n++)
+                starts[Histogram.channelOf(bins[n], longest) + 1]++;
+            for (int v = 1; v < starts.length; v++)
+                starts[v] += starts[v - 1];
+            for (int n = lo; n < hi; n++)
+                sorted[starts[Histogram.channelOf(bins[n], longest)]++] = bins[n];
+
+            System.arraycopy(sorted, 0, bins, lo, sorted.length);
+
+            long half = population / 2;
+            long seen = 0;
+            int split = lo;
+
+            while (split < hi - 1 && seen + histogram.count[bins[split]] <= half)
+                seen += histogram.count[bins[split++]];
+
+            return Math.max(split, lo + 1);
+        }
+
+        /**
+         * Returns the mean color of the pixels in the box.
+         */
+        int mean()
+        {
+            long r = 0;
+            long g = 0;
+            long b = 0;
+
+            for (int n = lo; n < hi; n++)
+            {
+                r += histogram.red[bins[n]];
+                g += histogram.green[bins[n]];
+                b += histogram.blue[bins[n]];
+            }
+
+            // Like the Crayola colors, the palette has no alpha.
+            return PixelColor.encodeToRGBA((int) ((r + population / 2) / population),
+                    (int) ((g + population / 2) / population),
+                    (int) ((b + population / 2) / population), 0);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package rathbunfinal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class times the stages of the program: decoding, each operation and
+ * encoding. Every run of a stage adds its wall time, its pixels and the bytes
+ * allocated by the thread that ran it to the stage's OperationStats, which are
+ * published as JMX MBeans under rathbunfinal:type=Operation. The timings can
+ * also be written to a JSON report.
+ *
+ * Timing is off unless the rathbunfinal.metrics system property is true or it
+ * is switched on with setEnabled. While it is off, start returns null and
+ * stop returns right away, so the cost is one volatile read per stage.
+ *
+ * @author Jared Rathbun
+ */
+public class Metrics
+{
+    // The system property that switches timing on.
+    public static final String ENABLED_PROPERTY = "rathbunfinal.metrics";
+
+    // Whether stages are being timed.
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    // The timings of each stage, in the order the stages first ran.
+    private static final Map<String, OperationStats> stats = new LinkedHashMap<>();
+
+    /**
+     * Holds everything that needs the management classes: the bean that
+     * tells how many bytes a thread has allocated, and publishing the
+     * timings over JMX. It is only loaded the first time a stage is timed, so
+     * a run with timing off never starts up the management classes.
+     */
+    private static final class Management
+    {
+        // Tells how many bytes a thread has allocated.
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        /**
+         * This method publishes the timings of a stage over JMX.
+         *
+         * @param s The timings.
+         */
+        private static void publish(OperationStats s)
+        {
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(s,
+                        new ObjectName("rathbunfinal:type=Operation,name="
+                                + ObjectName.quote(s.getName())));
+            } catch (JMException ex)
+            {
+                // The timings are still kept and reported without JMX.
+            }
+        }
+    }
+
+    /**
+     * One run of a stage that has started and not yet stopped.
+     */
+    public static final class Sample
+    {
+        private final String name;         // The name of the stage.
+        private final long startNanos;     // When the run started.
+        private final long startAllocated; // The bytes allocated before it.
+
+        private Sample(String name)
+        {
+            this.name = name;
+            this.startAllocated = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * This class only holds static methods.
+     */
+    private Metrics()
+    {
+    }
+
+    /**
+     * This method switches timing on or off.
+     *
+     * @param on True to time the stages.
+     */
+    public static void setEnabled(boolean on)
+    {
+        enabled = on;
+    }
+
+    /**
+     * This method checks whether the stages are being timed.
+     *
+     * @return True if timing is on.
+     */
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * This method starts timing a run of a stage.
+     *
+     * @param name The name of the stage.
+     * @return The run, or null if timing is off.
+     */
+    public static Sample start(String name)
+    {
+        return enabled ? new Sample(name) : null;
+    }
+
+    /**
+     * This method stops timing a run of a stage and adds it to the stage's
+     * timings. The bytes are those allocated by the calling thread, so work
+     * handed to other threads is timed but its allocations are not counted.
+     *
+     * @param sample The run returned by start, may be null.
+     * @param pixels The number of pixels the run handled.
+     */
+    public static void stop(Sample sample, long pixels)
+    {
+        if (sample == null)
+            return;
+
+        long nanos = System.nanoTime() - sample.startNanos;
+        long allocated = allocatedBytes();
+
+        statsFor(sample.name).add(nanos, pixels, (allocated < 0 || sample.startAllocated < 0)
+                ? -1 : allocated - sample.startAllocated);
+    }
+
+    /**
+     * This method returns the timings of a stage.
+     *
+     * @param name The name of the stage.
+     * @return The timings, or null if the stage has not been timed.
+     */
+    public static OperationStats get(String name)
+    {
+        synchronized (stats)
+        {
+            return stats.get(name);
+        }
+    }
+
+    /**
+     * This method returns the timings of every stage.
+     *
+     * @return The timings, in the order the stages first ran.
+     */
+    public static List<OperationStats> getAll()
+    {
+        synchronized (stats)
+        {
+            return new ArrayList<>(stats.values());
+        }
+    }
+
+    /**
+     * This method sets the timings of every stage back to zero.
+     */
+    public static void reset()
+    {
+        for (OperationStats s : getAll())
+            s.reset();
+    }
+
+    /**
+     * This method writes the timings of every stage as JSON.
+     *
+     * @param file The file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void writeReport(File file) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8"))
+        {
+            List<OperationStats> all = getAll();
+
+            out.println("{");
+            out.println("  \"operations\": [");
+
+            for (int k = 0; k < all.size(); k++)
+            {
+                OperationStats s = all.get(k);
+
+                out.printf(Locale.ROOT, "    {\"name\": \"%s\", \"count\": %d, "
+                        + "\"totalMillis\": %.3f, \"maxMillis\": %.3f, "
+                        + "\"pixels\": %d, \"pixelsPerSecond\": %.1f, "
+                        + "\"allocatedBytes\": %d}%s%n",
+                        s.getName().replace("\\", "\\\\").replace("\"", "\\\""),
+                        s.getCount(), s.getTotalMillis(), s.getMaxMillis(),
+                        s.getPixels(), s.getPixelsPerSecond(), s.getAllocatedBytes(),
+                        (k + 1 < all.size()) ? "," : "");
+            }
+
+            out.println("  ]");
+            out.println("}");
+        }
+    }
+
+    /**
+     * This method returns the timings of a stage, making them and publishing
+     * them over JMX the first time.
+     *
+     * @param name The name of the stage.
+     * @return The timings.
+     */
+    private static OperationStats statsFor(String name)
+    {
+        synchronized (stats)
+        {
+            OperationStats s = stats.get(name);
+
+            if (s == null)
+            {
+                s = new OperationStats(name);
+                stats.put(name, s);
+                Management.publish(s);
+            }
+
+            return s;
+        }
+    }
+
+    /**
+     * This method returns the bytes allocated by the calling thread so far.
+     *
+     * @return The bytes, or -1 if the JVM cannot tell.
+     */
+    private static long allocatedBytes()
+    {
+        ThreadMXBean threads = Management.THREADS;
+
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return -1;
+    }
+}
@@ -0,0 +1,98 @@
+package rathbunfinal;
+
+/**
+ * The timings of one operation, added up over every time it has run.
+ *
+ * @author Jared Rathbun
+ */
+public class OperationStats implements OperationStatsMBean
+{
+    private final String name;    // The name of the operation.
+    private long count;           // The number of runs.
+    private long totalNanos;      // The wall time of every run.
+    private long maxNanos;        // The wall time of the slowest run.
+    private long pixels;          // The pixels of every run.
+    private long allocatedBytes;  // The bytes allocated, or -1 if unknown.
+
+    /**
+     * Builds empty timings.
+     *
+     * @param name The name of the operation.
+     */
+    public OperationStats(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * This method adds one run of the operation.
+     *
+     * @param nanos The wall time of the run.
+     * @param pixels The number of pixels handled.
+     * @param allocated The bytes allocated, or -1 if unknown.
+     */
+    public synchronized void add(long nanos, long pixels, long allocated)
+    {
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        this.pixels += pixels;
+
+        if (allocated < 0 || allocatedBytes < 0)
+            allocatedBytes = -1;
+        else
+            allocatedBytes += allocated;
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+    @Override
+    public synchronized double getTotalMillis()
+    {
+        return totalNanos / 1e6;
+    }
+
+    @Override
+    public synchronized double getMaxMillis()
+    {
+        return maxNanos / 1e6;
+    }
+
+    @Override
+    public synchronized long getPixels()
+    {
+        return pixels;
+    }
+
+    @Override
+    public synchronized double getPixelsPerSecond()
+    {
+        return (totalNanos == 0) ? 0 : pixels * 1e9 / totalNanos;
+    }
+
+    @Override
+    public synchronized long getAllocatedBytes()
+    {
+        return allocatedBytes;
+    }
+
+    @Override
+    public synchronized void reset()
+    {
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        pixels = 0;
+        allocatedBytes = 0;
+    }
+}
@@ -0,0 +1,50 @@
+package rathbunfinal;
+
+/**
+ * The JMX view of the timings of one operation.
+ *
+ * @author Jared Rathbun
+ */
+public interface OperationStatsMBean
+{
+    /**
+     * @return The name of the operation.
+     */
+    String getName();
+
+    /**
+     * @return The number of times the operation has run.
+     */
+    long getCount();
+
+    /**
+     * @return The wall time of every run added up, in milliseconds.
+     */
+    double getTotalMillis();
+
+    /**
+     * @return The wall time of the slowest run, in milliseconds.
+     */
+    double getMaxMillis();
+
+    /**
+     * @return The number of pixels of every run added up.
+     */
+    long getPixels();
+
+    /**
+     * @return The pixels handled per second of wall time.
+     */
+    double getPixelsPerSecond();
+
+    /**
+     * @return The bytes allocated by the threads that started the runs, or
+     * -1 if the JVM cannot tell.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Sets every count back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,139 @@
+package rathbunfinal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class splits the command line into options, written as --name or
+ * --name=value, and the operations to perform on the image.
+ *
+ * @author Jared Rathbun
+ */
+public class Options
+{
+    private final Map<String, String> options = new HashMap<>(); // The options.
+    private final List<String> operations = new ArrayList<>();   // The operations.
+
+    /**
+     * This method parses the command line arguments.
+     *
+     * @param args The command line arguments.
+     * @return The parsed options and operations.
+     */
+    public static Options parse(String[] args)
+    {
+        Options parsed = new Options();
+
+        for (String arg : args)
+        {
+            if (arg.startsWith("--"))
+            {
+                int equals = arg.indexOf('=');
+
+                // An option without a value is just switched on.
+                if (equals < 0)
+                    parsed.options.put(arg.substring(2), "true");
+                else
+                    parsed.options.put(arg.substring(2, equals),
+                            arg.substring(equals + 1));
+            }
+            else
+                parsed.operations.add(arg);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * This method returns the operations in the order they were given.
+     *
+     * @return The operations.
+     */
+    public String[] getOperations()
+    {
+        return operations.toArray(new String[0]);
+    }
+
+    /**
+     * This method checks whether an option was given.
+     *
+     * @param name The name of the option, without the dashes.
+     * @return True if the option was given.
+     */
+    public boolean has(String name)
+    {
+        return options.containsKey(name);
+    }
+
+    /**
+     * This method checks whether any options were given.
+     *
+     * @return True if there was at least one option.
+     */
+    public boolean isEmpty()
+    {
+        return options.isEmpty();
+    }
+
+    /**
+     * This method returns the value of an option.
+     *
+     * @param name The name of the option, without the dashes.
+     * @param defaultValue The value to use if the option was not given.
+     * @return The value of the option.
+     */
+    public String get(String name, String defaultValue)
+    {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    /**
+     * This method returns the value of an option as a whole number.
+     *
+     * @param name The name of the option, without the dashes.
+     * @param defaultValue The value to use if the option was not given.
+     * @return The value of the option.
+     * @throws IllegalArgumentException if the value is not a number.
+     */
+    public int getInt(String name, int defaultValue)
+    {
+        String value = options.get(name);
+
+        if (value == null)
+            return defaultValue;
+
+        try
+        {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex)
+        {
+            throw new IllegalArgumentException("--" + name + " must be a number");
+        }
+    }
+
+    /**
+     * This method returns the value of an option as a number.
+     *
+     * @param name The name of the option, without the dashes.
+     * @param defaultValue The value to use if the option was not given.
+     * @return The value of the option.
+     * @throws IllegalArgumentException if the value is not a number.
+     */
+    public double getDouble(String name, double defaultValue)
+    {
+        String value = options.get(name);
+
+        if (value == null)
+            return defaultValue;
+
+        try
+        {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex)
+        {
+            throw new IllegalArgumentException("--" + name + " must be a number");
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package rathbunfinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+
+/**
+ * A frame or sticker that has been decoded and compiled for laying over an
+ * image. Frames are mostly transparent, so each row of the overlay is broken
+ * into spans of visible pixels when it is loaded. Applying the overlay then
+ * only copies those spans and never looks at the transparent pixels.
+ *
+ * @author Jared Rathbun
+ */
+public class Overlay
+{
+    // Decodes overlay files for the asset cache.
+    private static final AssetCache.Loader<Overlay> LOADER =
+            new AssetCache.Loader<Overlay>()
+    {
+        @Override
+        public Overlay load(File file) throws IOException
+        {
+            BufferedImage image = ImageIO.read(file);
+
+            if (image == null)
+                throw new IOException("Not an image: " + file);
+
+            return new Overlay(image);
+        }
+
+        @Override
+        public long sizeOf(Overlay overlay)
+        {
+            return 8L * overlay.pixels.length + overlay.visible.sizeOf()
+                    + overlay.solid.sizeOf() + overlay.partial.sizeOf();
+        }
+    };
+
+    private final int width;          // The width of the overlay.
+    private final int height;         // The height of the overlay.
+    private final int[] pixels;       // The ARGB pixels, row by row.
+    private final int[] solidPixels;  // The pixels with the alpha channel on.
+
+    private final Spans visible;  // Runs of pixels that are not fully transparent.
+    private final Spans solid;    // Runs of fully opaque pixels.
+    private final Spans partial;  // Runs of partly transparent pixels.
+
+    /**
+     * Builds an overlay from an image.
+     *
+     * @param image The frame or sticker image.
+     */
+    public Overlay(BufferedImage image)
+    {
+        width = image.getWidth();
+        height = image.getHeight();
+        pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        // Opaque images ignore the alpha channel, but it is kept on so the
+        // image's pixels always match getRGB.
+        solidPixels = new int[pixels.length];
+        for (int p = 0; p < pixels.length; p++)
+            solidPixels[p] = pixels[p] | 0xFF000000;
+
+        visible = new Spans(0x01, 0xFF);
+        solid = new Spans(0xFF, 0xFF);
+        partial = new Spans(0x01, 0xFE);
+    }
+
+    /**
+     * This method returns the overlay stored in a file, reusing the compiled
+     * overlay if the file was loaded before and has not changed.
+     *
+     * @param file The frame or sticker file.
+     * @return The overlay.
+     * @throws IOException if the file cannot be read.
+     */
+    public static Overlay load(File file) throws IOException
+    {
+        return AssetCache.getShared().get(file, LOADER);
+    }
+
+    /**
+     * This method returns the width of the overlay.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * This method returns the height of the overlay.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * This method returns the ARGB pixel at (i, j).
+     *
+     * @param i The column.
+     * @param j The row.
+     * @return The ARGB pixel.
+     */
+    public int getRGB(int i, int j)
+    {
+        return pixels[j * width + i];
+    }
+
+    /**
+     * This method returns the number of pixels that are not fully
+     * transparent, which is the number of pixels applying the overlay touches.
+     *
+     * @return The number of visible pixels.
+     */
+    public int getVisiblePixels()
+    {
+        return visible.covered;
+    }
+
+    /**
+     * This method lays rows of the overlay over the top left corner of an
+     * image. Without blending, every pixel that is not fully transparent is
+     * copied over as is. With blending, partly transparent pixels are mixed
+     * with the image according to their alpha channel.
+     *
+     * @param dest The pixels of the image, row by row.
+     * @param destWidth The width of the image.
+     * @param opaque True if the image has no alpha channel.
+     * @param blend True to blend partly transparent pixels.
+     * @param firstRow The first row of the overlay to apply.
+     * @param lastRow One past the last row of the overlay to apply.
+     */
+    void applyTo(int[] dest, int destWidth, boolean opaque, boolean blend,
+            int firstRow, int lastRow)
+    {
+        assert (destWidth >= width) && (lastRow <= height);
+
+        int[] source = opaque ? solidPixels : pixels;
+
+        if (blend == false)
+        {
+            visible.copy(source, dest, destWidth, firstRow, lastRow);
+            return;
+        }
+
+        solid.copy(source, dest, destWidth, firstRow, lastRow);
+
+        for (int j = firstRow; j < lastRow; j++)
+            for (int s = partial.rowStart[j]; s < partial.rowStart[j + 1]; s++)
+            {
+                int from = j * width + partial.starts[s];
+                int to = j * destWidth + partial.starts[s];
+
+                for (int n = 0; n < partial.lengths[s]; n++)
+                    dest[to + n] = blend(pixels[from + n], dest[to + n], opaque);
+            }
+    }
+
+    /**
+     * This method draws one pixel over another.
+     *
+     * @param src The ARGB overlay pixel.
+     * @param dst The ARGB image pixel.
+     * @param opaque True if the image has no alpha channel.
+     * @return The blended ARGB pixel.
+     */
+    private static int blend(int src, int dst, boolean opaque)
+    {
+        int sa = PixelColor.getAlphaChannel(src);
+        int da = opaque ? 255 : PixelColor.getAlphaChannel(dst);
+
+        // The share of the image that shows through, scaled by 255.
+        int under = (da * (255 - sa) + 127) / 255;
+        int outA = sa + under;
+
+        if (outA == 0)
+            return 0;
+
+        int r = (PixelColor.getRedChannel(src) * sa
+                + PixelColor.getRedChannel(dst) * under + outA / 2) / outA;
+        int g = (PixelColor.getGreenChannel(src) * sa
+                + PixelColor.getGreenChannel(dst) * under + outA / 2) / outA;
+        int b = (PixelColor.getBlueChannel(src) * sa
+                + PixelColor.getBlueChannel(dst) * under + outA / 2) / outA;
+
+        return PixelColor.encodeToRGBA(r, g, b, outA);
+    }
+
+    /**
+     * The runs of pixels in each row whose alpha falls in a range.
+     */
+    private class Spans
+    {
+        private final int[] rowStart; // The first span of each row, and one extra.
+        private final int[] starts;   // The column each span starts at.
+        private final int[] lengths;  // The length of each span.
+        private final int covered;    // The number of pixels in all of the spans.
+
+        /**
+         * Finds the spans of the overlay whose alpha is between min and max.
+         *
+         * @param min The lowest alpha to include.
+         * @param max The highest alpha to include.
+         */
+        Spans(int min, int max)
+        {
+            int[] s = new int[16]; // The starts found so far.
+            int[] l = new int[16]; // The lengths found so far.
+            int count = 0;
+            int total = 0;
+
+            rowStart = new int[height + 1];
+
+            for (int j = 0; j < height; j++)
+            {
+                rowStart[j] = count;
+                int i = 0;
+
+                while (i < width)
+                {
+                    // Skip the pixels outside the range.
+                    while (i < width && !inRange(j, i, min, max))
+                        i++;
+
+                    int start = i;
+
+                    while (i < width && inRange(j, i, min, max))
+                        i++;
+
+                    if (i > start)
+                    {
+                        if (count == s.length)
+                        {
+                            s = Arrays.copyOf(s, 2 * count);
+                            l = Arrays.copyOf(l, 2 * count);
+                        }
+
+                        s[count] = start;
+                        l[count] = i - start;
+                        total += i - start;
+                        count++;
+                    }
+                }
+            }
+
+            rowStart[height] = count;
+            starts = Arrays.copyOf(s, count);
+            lengths = Arrays.copyOf(l, count);
+            covered = total;
+        }
+
+        /**
+         * Copies the spans of the given rows into the image.
+         */
+        void copy(int[] source, int[] dest, int destWidth, int firstRow, int lastRow)
+        {
+            for (int j = firstRow; j < lastRow; j++)
+                for (int s = rowStart[j]; s < rowStart[j + 1]; s++)
+                    System.arraycopy(source, j * width + starts[s], dest,
+                            j * destWidth + starts[s], lengths[s]);
+        }
+
+        /**
+         * Returns about how many bytes the spans take up.
+         */
+        long sizeOf()
+        {
+            return 4L * (rowStart.length + starts.length + lengths.length);
+        }
+
+        /**
+         * Checks whether the alpha of pixel (i, j) is between min and max.
+         */
+        private boolean inRange(int j, int i, int min, int max)
+        {
+            int alpha = PixelColor.getAlphaChannel(pixels[j * width + i]);
+
+            return alpha >= min && alpha <= max;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package rathbunfinal;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class maps pixel colors to the closest color of a palette. The
+ * coordinates of each palette color in the color metric's space are computed
+ * once, and the result for every RGB value is remembered in a lookup table the
+ * first time that value is seen, so each distinct color is only ever matched
+ * once per palette. Large palettes are searched with a k-d tree instead of
+ * a linear scan.
+ *
+ * @author Jared Rathbun
+ */
+public class PaletteMap
+{
+    // The number of palettes kept around at once.
+    private static final int MAX_CACHED_PALETTES = 4;
+
+    // Palettes with more colors than this are searched with a k-d tree.
+    static final int TREE_MIN_COLORS = 64;
+
+    // The palette maps that have already been built, keyed by palette.
+    private static final Map<PaletteKey, PaletteMap> cache =
+            new LinkedHashMap<PaletteKey, PaletteMap>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PaletteKey, PaletteMap> e)
+        {
+            return size() > MAX_CACHED_PALETTES;
+        }
+    };
+
+    private final int[] palette;        // The colors of the palette.
+    private final ColorMetric metric;   // Where the colors are placed.
+    private final double[] coord0;      // The first coordinate of each color.
+    private final double[] coord1;      // The second coordinate of each color.
+    private final double[] coord2;      // The third coordinate of each color.
+    private final PaletteTree tree;     // The k-d tree, null for small palettes.
+
+    // The palette index + 1 for every 24-bit RGB value, 0 if not yet known.
+    // It takes 32 MB, so it is only made the first time it is needed.
+    private volatile short[] lookup;
+
+    /**
+     * Builds a palette map for the given palette using the HSV cone metric of
+     * PixelColor.colorDistance.
+     *
+     * @param palette The colors of the palette.
+     */
+    public PaletteMap(int[] palette)
+    {
+        this(palette, ColorMetrics.HSV_CONE);
+    }
+
+    /**
+     * Builds a palette map for the given palette.
+     *
+     * @param palette The colors of the palette.
+     * @param metric The color metric used to find the closest color.
+     */
+    public PaletteMap(int[] palette, ColorMetric metric)
+    {
+        assert (palette.length > 0) && (palette.length < Short.MAX_VALUE);
+
+        this.palette = palette.clone();
+        this.metric = metric;
+        coord0 = new double[palette.length];
+        coord1 = new double[palette.length];
+        coord2 = new double[palette.length];
+
+        double[] coords = new double[3];
+
+        // The coordinates of each palette color are computed once.
+        for (int k = 0; k < palette.length; k++)
+        {
+            metric.toCoordinates(palette[k], coords);
+            coord0[k] = coords[0];
+            coord1[k] = coords[1];
+            coord2[k] = coords[2];
+        }
+
+        tree = (palette.length > TREE_MIN_COLORS)
+                ? new PaletteTree(coord0, coord1, coord2) : null;
+    }
+
+    /**
+     * This method returns the palette map for the given palette using the HSV
+     * cone metric, building it only if the same palette has not been used
+     * recently.
+     *
+     * @param palette The colors of the palette.
+     * @return The palette map for the palette.
+     */
+    public static PaletteMap forPalette(int[] palette)
+    {
+        return forPalette(palette, ColorMetrics.HSV_CONE);
+    }
+
+    /**
+     * This method returns the palette map for the given palette and metric,
+     * building it only if the same pair has not been used recently.
+     *
+     * @param palette The colors of the palette.
+     * @param metric The color metric used to find the closest color.
+     * @return The palette map for the palette.
+     */
+    public static PaletteMap forPalette(int[] palette, ColorMetric metric)
+    {
+        PaletteKey key = new PaletteKey(palette, metric);
+
+        synchronized (cache)
+        {
+            PaletteMap map = cache.get(key);
+
+            if (map == null)
+            {
+                map = new PaletteMap(palette, metric);
+                cache.put(key, map);
+            }
+
+            return map;
+        }
+    }
+
+    /**
+     * This method returns the colors of the palette.
+     *
+     * @return A copy of the palette.
+     */
+    public int[] getPalette()
+    {
+        return palette.clone();
+    }
+
+    /**
+     * This method returns the index of the palette color closest to the rgb
+     * value. Ties go to the lowest index, just like a linear scan with
+     * PixelColor.colorDistance.
+     *
+     * @param rgb An RGB value, the alpha channel is ignored.
+     * @return The index of the closest palette color.
+     */
+    public int nearestIndex(int rgb)
+    {
+        short[] lookup = getLookup();
+        int key = rgb & 0xFFFFFF;
+        int index = lookup[key];
+
+        // The color has not been seen yet, so the palette is searched.
+        if (index == 0)
+        {
+            index = search(key) + 1;
+
+            // Racing threads always store the same value, so this is safe.
+            lookup[key] = (short) index;
+        }
+
+        return index - 1;
+    }
+
+    /**
+     * This method returns the palette color closest to the rgb value.
+     *
+     * @param rgb An RGB value, the alpha channel is ignored.
+     * @return The closest palette color.
+     */
+    public int nearestColor(int rgb)
+    {
+        return palette[nearestIndex(rgb)];
+    }
+
+    /**
+     * This method returns the index of the palette color closest to the rgb
+     * value without using or filling the lookup table. It is for callers that
+     * keep their own table of the colors they have matched.
+     *
+     * @param rgb An RGB value, the alpha channel is ignored.
+     * @return The index of the closest palette color.
+     */
+    int searchIndex(int rgb)
+    {
+        return search(rgb & 0xFFFFFF);
+    }
+
+    /**
+     * This method returns the color metric used to find the closest color.
+     *
+     * @return The color metric.
+     */
+    public ColorMetric getMetric()
+    {
+        return metric;
+    }
+
+    /**
+     * This method returns the lookup table, making it if it does not exist.
+     *
+     * @return The lookup table.
+     */
+    private short[] getLookup()
+    {
+        short[] table = lookup;
+
+        if (table == null)
+        {
+            synchronized (this)
+            {
+                if (lookup == null)
+                    lookup = new short[1 << 24];
+
+                table = lookup;
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * This method scans the palette for the color closest to rgb. Colors are
+     * compared by squared distance, so no square root is taken unless a color
+     * is closer than the best so far. Only then is the square root compared,
+     * which keeps ties going to the same color that PixelColor.colorDistance
+     * would pick.
+     *
+     * @param rgb An RGB value.
+     * @return The index of the closest palette color.
+     */
+    private int search(int rgb)
+    {
+        double[] coords = new double[3];
+        metric.toCoordinates(rgb, coords);
+
+        double c0 = coords[0];
+        double c1 = coords[1];
+        double c2 = coords[2];
+
+        if (tree != null)
+            return tree.nearest(c0, c1, c2);
+
+        int bestIndex = 0;
+        double bestSquared = squaredDistance(c0, c1, c2, 0);
+        double bestDistance = Math.sqrt(bestSquared);
+
+        for (int k = 1; k < palette.length; k++)
+        {
+            double d = squaredDistance(c0, c1, c2, k);
+
+            if (d < bestSquared && Math.sqrt(d) < bestDistance)
+            {
+                bestIndex = k;
+                bestSquared = d;
+                bestDistance = Math.sqrt(d);
+            }
+        }
+
+        return bestIndex;
+    }
+
+    /**
+     * This method returns the squared distance between a point and the
+     * palette color at index k.
+     *
+     * @param c0 The first coordinate of the point.
+     * @param c1 The second coordinate of the point.
+     * @param c2 The third coordinate of the point.
+     * @param k The index of the palette color.
+     * @return The squared distance between the point and the palette color.
+     */
+    private double squaredDistance(double c0, double c1, double c2, int k)
+    {
+        double d0 = c0 - coord0[k];
+        double d1 = c1 - coord1[k];
+        double d2 = coord2[k] - c2;
+
+        return d0 * d0 + d1 * d1 + d2 * d2;
+    }
+
+    /**
+     * A key that compares palettes by their colors and metric.
+     */
+    private static class PaletteKey
+    {
+        private final int[] colors;
+        private final ColorMetric metric;
+        private final int hash;
+
+        PaletteKey(int[] colors, ColorMetric metric)
+        {
+            this.colors = colors.clone();
+            this.metric = metric;
+            this.hash = Arrays.hashCode(colors) * 31 + metric.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return (o instanceof PaletteKey)
+                    && Arrays.equals(colors, ((PaletteKey) o).colors)
+                    && metric == ((PaletteKey) o).metric;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package rathbunfinal;
+
+/**
+ * A k-d tree over the coordinates of the colors of a palette. The tree is
+ * stored as a permutation of the palette indices: the median of each range is
+ * the node, and the halves on either side of it are its children. Finding the
+ * closest color only visits the parts of the palette whose bounding planes are
+ * no farther away than the best color found so far.
+ *
+ * The answer is always the same as a linear scan that keeps the first of
+ * equally close colors. A side of the tree is only skipped when the distance
+ * to its plane is strictly farther than the best color, and ties between
+ * colors at the same distance go to the lower index.
+ *
+ * @author Jared Rathbun
+ */
+class PaletteTree
+{
+    private final double[][] coords; // The coordinates of each color, by axis.
+    private final int[] order;       // The palette indices, in tree order.
+    private final byte[] axis;       // The axis each node splits on.
+
+    /**
+     * Builds the tree.
+     *
+     * @param coord0 The first coordinate of each color.
+     * @param coord1 The second coordinate of each color.
+     * @param coord2 The third coordinate of each color.
+     */
+    PaletteTree(double[] coord0, double[] coord1, double[] coord2)
+    {
+        coords = new double[][] {coord0, coord1, coord2};
+        order = new int[coord0.length];
+        axis = new byte[coord0.length];
+
+        for (int k = 0; k < order.length; k++)
+            order[k] = k;
+
+        build(0, order.length);
+    }
+
+    /**
+     * This method finds the color closest to a point.
+     *
+     * @param c0 The first coordinate of the point.
+     * @param c1 The second coordinate of the point.
+     * @param c2 The third coordinate of the point.
+     * @return The index of the closest color.
+     */
+    int nearest(double c0, double c1, double c2)
+    {
+        Search search = new Search(c0, c1, c2);
+        search.visit(0, order.length);
+
+        return search.bestIndex;
+    }
+
+    /**
+     * This method splits the range lo to hi of the order on the axis where
+     * its colors are spread the widest, then builds each half.
+     *
+     * @param lo The first position of the range.
+     * @param hi One past the last position of the range.
+     */
+    private void build(int lo, int hi)
+    {
+        if (hi - lo <= 1)
+            return;
+
+        int split = widestAxis(lo, hi);
+        int mid = (lo + hi) >>> 1;
+
+        select(coords[split], lo, hi - 1, mid);
+        axis[mid] = (byte) split;
+
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    /**
+     * This method returns the axis with the largest spread of coordinates.
+     *
+     * @param lo The first position of the range.
+     * @param hi One past the last position of the range.
+     * @return The axis, 0 to 2.
+     */
+    private int widestAxis(int lo, int hi)
+    {
+        int widest = 0;
+        double widestSpread = -1;
+
+        for (int a = 0; a < 3; a++)
+        {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+
+            for (int p = lo; p < hi; p++)
+            {
+                min = Math.min(min, coords[a][order[p]]);
+                max = Math.max(max, coords[a][order[p]]);
+            }
+
+            if (max - min > widestSpread)
+            {
+                widest = a;
+                widestSpread = max - min;
+            }
+        }
+
+        return widest;
+    }
+
+    /**
+     * This method rearranges the order between lo and hi so the color at
+     * position k is in its sorted place, with no larger coordinate before it
+     * and no smaller one after it.
+     *
+     * @param c The coordinates being sorted on.
+     * @param lo The first position.
+     * @param hi The last position.
+     * @param k The position to fill.
+     */
+    private void select(double[] c, int lo, int hi, int k)
+    {
+        while (hi > lo)
+        {
+            double pivot = c[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+
+            while (i <= j)
+            {
+                while (c[order[i]] < pivot)
+                    i++;
+                while (c[order[j]] > pivot)
+                    j--;
+
+                if (i <= j)
+                {
+                    int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    /**
+     * The state of one nearest color search.
+     */
+    private class Search
+    {
+        private final double[] point;  // The point being matched.
+        private int bestIndex = -1;    // The closest color so far.
+        private double bestDistance = Double.POSITIVE_INFINITY;
+
+        Search(double c0, double c1, double c2)
+        {
+            point = new double[] {c0, c1, c2};
+        }
+
+        /**
+         * Checks the colors in the range lo to hi, the nearer side first.
+         */
+        void visit(int lo, int hi)
+        {
+            if (hi <= lo)
+                return;
+
+            int mid = (lo + hi) >>> 1;
+            int k = order[mid];
+
+            // The same sums as PaletteMap, so the distances match exactly.
+            double d0 = point[0] - coords[0][k];
+            double d1 = point[1] - coords[1][k];
+            double d2 = coords[2][k] - point[2];
+            double d = Math.sqrt(d0 * d0 + d1 * d1 + d2 * d2);
+
+            if (d < bestDistance || (d == bestDistance && k < bestIndex))
+            {
+                bestIndex = k;
+                bestDistance = d;
+            }
+
+            if (hi - lo == 1)
+                return;
+
+            int a = axis[mid];
+            double diff = point[a] - coords[a][k];
+            boolean left = diff < 0;
+
+            visit(left ? lo : mid + 1, left ? mid : hi);
+
+            // A color on the far side is at least as far as the plane.
+            if (Math.sqrt(diff * diff) <= bestDistance)
+                visit(left ? mid + 1 : lo, left ? hi : mid);
+        }
+    }
+}
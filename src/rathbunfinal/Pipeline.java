@@ -0,0 +1,430 @@
+package rathbunfinal;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class holds a chain of operations to run on an image. Consecutive
+ * pixel operations are fused into one stage, so the whole run of them is done
+ * in a single pass over the image, row by row, instead of one pass each.
+ * Any other stage, like adding a frame, is a barrier that runs on its own.
+ * Each stage is timed under its name when Metrics is on.
+ *
+ * @author Jared Rathbun
+ */
+public class Pipeline
+{
+    // How strong an edge must be for --outline to draw it, from 0 to 255.
+    private static final int DEFAULT_OUTLINE_THRESHOLD = 48;
+
+    // The farthest a blur can reach, in pixels. The work for each pixel grows
+    // with the reach, so one request cannot keep a thread busy for minutes.
+    private static final int MAX_BLUR_RADIUS = 1000;
+
+    // The operations a pipeline can be built from.
+    private static final List<String> OPERATIONS = Arrays.asList("grayscale",
+            "addframe", "addsticker", "cartoonify", "negative", "blur", "sharpen",
+            "edges");
+
+    private final List<Stage> stages = new ArrayList<>(); // The stages, in order.
+    private final List<String> names = new ArrayList<>();  // The name of each stage.
+
+    /**
+     * A step of the pipeline that runs on the whole image.
+     */
+    public interface Stage
+    {
+        /**
+         * Runs the step on the image.
+         *
+         * @param image The image to change.
+         * @throws IOException
+         */
+        void run(Image image) throws IOException;
+    }
+
+    /**
+     * This method checks whether a name is one of the operations a pipeline
+     * can be built from.
+     *
+     * @param task The name.
+     * @return True if it is an operation.
+     */
+    public static boolean isOperation(String task)
+    {
+        return OPERATIONS.contains(task);
+    }
+
+    /**
+     * This method builds the pipeline for the operations named on the command
+     * line. The caller decides how frames and stickers are found, since that
+     * needs a file chooser in the GUI and a command line option in batch mode.
+     *
+     * @param ops The names of the operations, in order.
+     * @param addFrame The stage to run for "addframe".
+     * @param addSticker The stage to run for "addsticker".
+     * @return The pipeline.
+     * @throws FileNotFoundException if the palette cannot be loaded.
+     */
+    public static Pipeline compile(String[] ops, Stage addFrame, Stage addSticker)
+            throws FileNotFoundException
+    {
+        return compile(Options.parse(ops), addFrame, addSticker);
+    }
+
+    /**
+     * This method builds the pipeline for the operations on the command line,
+     * using the options that tune them, like --metric.
+     *
+     * @param options The command line options and operations.
+     * @param addFrame The stage to run for "addframe".
+     * @param addSticker The stage to run for "addsticker".
+     * @return The pipeline.
+     * @throws FileNotFoundException if the palette cannot be loaded.
+     */
+    public static Pipeline compile(Options options, Stage addFrame, Stage addSticker)
+            throws FileNotFoundException
+    {
+        Pipeline pipeline = new Pipeline();
+
+        for (String task : options.getOperations())
+        {
+            PixelOperation op = pointOperation(task, options);
+
+            if (op != null)
+                pipeline.addPointOperation(task, op);
+            else if (task.equals("cartoonify"))
+                pipeline.addStage(task, cartoonifyStage(options));
+            else if (task.equals("blur") || task.equals("sharpen")
+                    || task.equals("edges"))
+                pipeline.addStage(task, convolutionStage(task, options));
+            else if (task.equals("addframe"))
+                pipeline.addStage(task, addFrame);
+            else if (task.equals("addsticker"))
+                pipeline.addStage(task, addSticker);
+        }
+
+        return pipeline;
+    }
+
+    /**
+     * This method returns the pixel operation for an operation name.
+     *
+     * @param task The name of the operation.
+     * @return The pixel operation, or null if the operation needs more than
+     * one pixel at a time.
+     * @throws FileNotFoundException if the palette cannot be loaded.
+     */
+    public static PixelOperation pointOperation(String task)
+            throws FileNotFoundException
+    {
+        return pointOperation(task, Options.parse(new String[0]));
+    }
+
+    /**
+     * This method returns the pixel operation for an operation name, tuned by
+     * the command line options. The --metric option picks the color metric
+     * cartoonify matches pixels with, either hsv (the default) or lab, and
+     * --palette names a palette file to use instead of the Crayola colors.
+     * With --colors, cartoonify picks its palette from each image, and with
+     * --dither or --outline a pixel's color depends on its neighbors or where
+     * it is, so then it is not a pixel operation.
+     *
+     * @param task The name of the operation.
+     * @param options The command line options.
+     * @return The pixel operation, or null if the operation needs more than
+     * one pixel at a time.
+     * @throws FileNotFoundException if the palette cannot be loaded.
+     * @throws IllegalArgumentException if the metric is unknown.
+     */
+    public static PixelOperation pointOperation(String task, Options options)
+            throws FileNotFoundException
+    {
+        switch (task)
+        {
+            case "grayscale":
+                return PointOperations.GRAYSCALE;
+            case "cartoonify":
+                if (options.has("colors") || options.has("dither")
+                        || options.has("outline"))
+                    return null;
+
+                return PointOperations.palette(PaletteMap.forPalette(
+                        PixelColor.getPalette(new File(
+                                options.get("palette", "palette.txt"))),
+                        ColorMetrics.forName(options.get("metric", "hsv"))));
+            case "negative":
+                return PointOperations.NEGATIVE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * This method returns the stage that cartoonifies each image when it is
+     * not a pixel operation: with a palette of --colors colors picked from
+     * the image, dithered with --dither=<none, ordered or fs>, or with black
+     * outlines along edges stronger than --outline[=<0-255>].
+     *
+     * @param options The command line options.
+     * @return The stage.
+     * @throws FileNotFoundException if the palette cannot be loaded.
+     * @throws IllegalArgumentException if the number of colors, the metric,
+     * the dithering or the outline threshold is not valid.
+     */
+    static Stage cartoonifyStage(Options options) throws FileNotFoundException
+    {
+        return cartoonifyStage(options, 1.0);
+    }
+
+    /**
+     * This method returns the cartoonify stage for a copy of the image scaled
+     * by the given factor, like the editor's preview. The blur the outlines
+     * are found on is scaled with it.
+     *
+     * @param options The command line options.
+     * @param scale The size of the copy over the size of the image.
+     * @return The stage.
+     * @throws FileNotFoundException if the palette cannot be loaded.
+     * @throws IllegalArgumentException if the number of colors, the metric,
+     * the dithering or the outline threshold is not valid.
+     */
+    static Stage cartoonifyStage(Options options, double scale)
+            throws FileNotFoundException
+    {
+        ColorMetric metric = ColorMetrics.forName(options.get("metric", "hsv"));
+        Dither dither = Dither.forName(options.get("dither", "none"));
+        Stage cartoon;
+
+        if (!options.has("colors"))
+        {
+            PaletteMap palette = PaletteMap.forPalette(PixelColor.getPalette(
+                    new File(options.get("palette", "palette.txt"))), metric);
+
+            cartoon = image -> image.cartoonify(palette, dither);
+        }
+        else
+        {
+            int colors = options.getInt("colors", 0);
+
+            if (colors < 1 || colors >= Short.MAX_VALUE)
+                throw new IllegalArgumentException("--colors must be between 1 and "
+                        + (Short.MAX_VALUE - 1));
+
+            cartoon = image -> image.cartoonify(colors, metric, dither);
+        }
+
+        if (!options.has("outline"))
+            return cartoon;
+
+        // A bare --outline uses the default threshold.
+        int threshold = options.get("outline", "true").equals("true")
+                ? DEFAULT_OUTLINE_THRESHOLD : options.getInt("outline", 0);
+
+        if (threshold < 0 || threshold > 255)
+            throw new IllegalArgumentException("--outline must be between 0 and 255");
+
+        return image -> image.outline(threshold, scale, cartoon);
+    }
+
+    /**
+     * This method returns the stage for a convolution. Blur is a Gaussian
+     * with a standard deviation of --sigma pixels, 2 by default, or a box
+     * blur with --box=<radius>. Sharpen is an unsharp mask with a --sigma of
+     * 1 by default and an --amount of 1. Edges shows the Sobel edges.
+     *
+     * @param task blur, sharpen or edges.
+     * @param options The command line options.
+     * @return The stage.
+     * @throws IllegalArgumentException if an option is out of range.
+     */
+    static Stage convolutionStage(String task, Options options)
+    {
+        return convolutionStage(task, options, 1.0);
+    }
+
+    /**
+     * This method returns the stage for a convolution on a copy of the image
+     * scaled by the given factor, like the editor's preview. The sizes of the
+     * blurs are scaled with it, so the copy looks like the full image would.
+     *
+     * @param task blur, sharpen or edges.
+     * @param options The command line options.
+     * @param scale The size of the copy over the size of the image.
+     * @return The stage.
+     * @throws IllegalArgumentException if an option is out of range.
+     */
+    static Stage convolutionStage(String task, Options options, double scale)
+    {
+        switch (task)
+        {
+            case "blur":
+                if (options.has("box"))
+                {
+                    int radius = options.getInt("box", 0);
+
+                    if (radius < 0 || radius > MAX_BLUR_RADIUS)
+                        throw new IllegalArgumentException("--box must be between 0 and "
+                                + MAX_BLUR_RADIUS);
+
+                    int scaled = (int) Math.round(radius * scale);
+
+                    return image -> image.boxBlur(scaled);
+                }
+
+                double sigma = sigma(options, 2.0) * scale;
+
+                return image -> image.blur(sigma);
+            case "sharpen":
+                double maskSigma = sigma(options, 1.0) * scale;
+                double amount = options.getDouble("amount", 1.0);
+
+                return image -> image.sharpen(maskSigma, amount);
+            case "edges":
+                return Image::edges;
+            default:
+                throw new IllegalArgumentException("Not a convolution: " + task);
+        }
+    }
+
+    /**
+     * This method returns the --sigma option, which must be more than 0 and
+     * small enough that the blur reaches at most MAX_BLUR_RADIUS pixels.
+     *
+     * @param options The command line options.
+     * @param defaultValue The value to use if the option was not given.
+     * @return The value.
+     * @throws IllegalArgumentException if the value is out of range.
+     */
+    private static double sigma(Options options, double defaultValue)
+    {
+        double value = options.getDouble("sigma", defaultValue);
+
+        // The Gaussian reaches out three standard deviations.
+        if (!(value > 0 && value <= MAX_BLUR_RADIUS / 3.0))
+            throw new IllegalArgumentException("--sigma must be more than 0 and at most "
+                    + MAX_BLUR_RADIUS / 3);
+
+        return value;
+    }
+
+    /**
+     * This method adds a pixel operation to the end of the pipeline, fusing
+     * it with the stage before it if that stage is also made of pixel
+     * operations.
+     *
+     * @param op The pixel operation.
+     * @return This pipeline.
+     */
+    public Pipeline addPointOperation(PixelOperation op)
+    {
+        return addPointOperation("pixels", op);
+    }
+
+    /**
+     * This method adds a named pixel operation to the end of the pipeline,
+     * fusing it with the stage before it if that stage is also made of pixel
+     * operations. A fused stage is named after all of its operations, like
+     * grayscale+negative.
+     *
+     * @param name The name of the operation.
+     * @param op The pixel operation.
+     * @return This pipeline.
+     */
+    public Pipeline addPointOperation(String name, PixelOperation op)
+    {
+        assert (op != null);
+
+        int last = stages.size() - 1;
+
+        if (last >= 0 && stages.get(last) instanceof PointStage)
+        {
+            ((PointStage) stages.get(last)).ops.add(op);
+            names.set(last, names.get(last) + "+" + name);
+        }
+        else
+        {
+            stages.add(new PointStage(op));
+            names.add(name);
+        }
+
+        return this;
+    }
+
+    /**
+     * This method adds a barrier stage to the end of the pipeline.
+     *
+     * @param stage The stage.
+     * @return This pipeline.
+     */
+    public Pipeline addStage(Stage stage)
+    {
+        return addStage("stage", stage);
+    }
+
+    /**
+     * This method adds a named barrier stage to the end of the pipeline.
+     *
+     * @param name The name the stage is timed under.
+     * @param stage The stage.
+     * @return This pipeline.
+     */
+    public Pipeline addStage(String name, Stage stage)
+    {
+        assert (stage != null);
+
+        stages.add(stage);
+        names.add(name);
+        return this;
+    }
+
+    /**
+     * This method returns the number of stages after fusing.
+     *
+     * @return The number of passes the pipeline makes over an image.
+     */
+    public int getStageCount()
+    {
+        return stages.size();
+    }
+
+    /**
+     * This method runs every stage on the image in order.
+     *
+     * @param image The image to change.
+     * @throws IOException
+     */
+    public void run(Image image) throws IOException
+    {
+        for (int k = 0; k < stages.size(); k++)
+        {
+            Metrics.Sample sample = Metrics.start(names.get(k));
+            stages.get(k).run(image);
+            Metrics.stop(sample, (long) image.getImage().getWidth()
+                    * image.getImage().getHeight());
+        }
+    }
+
+    /**
+     * A stage made of pixel operations that are run together.
+     */
+    private static class PointStage implements Stage
+    {
+        private final List<PixelOperation> ops = new ArrayList<>();
+
+        PointStage(PixelOperation op)
+        {
+            ops.add(op);
+        }
+
+        @Override
+        public void run(Image image)
+        {
+            image.applyPointOperations(ops.toArray(new PixelOperation[0]));
+        }
+    }
+}
@@ -2,6 +2,9 @@ package rathbunfinal;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.Scanner;
 
 /**
@@ -16,6 +19,23 @@ import java.util.Scanner;
    public final static int PIXEL_BLUE_CHANNEL = 0;
    public final static int PIXEL_ALPHA_CHANNEL = 24;
 
+   // Parses the palette file for the asset cache.
+   private final static AssetCache.Loader<int[]> PALETTE_LOADER = 
+           new AssetCache.Loader<int[]>()
+   {
+       @Override
+       public int[] load(File file) throws IOException
+       {
+           return readPalette(file);
+       }
+
+       @Override
+       public long sizeOf(int[] palette)
+       {
+           return 4L * palette.length;
+       }
+   };
+
    /**
     * Gets the value of the named channel.
     *
@@ -97,7 +117,8 @@ import java.util.Scanner;
     }
     
     /**
-     * This method gets the 120 Crayola (tm) crayon colors from a file.
+     * This method gets the 120 Crayola (tm) crayon colors from a file. The
+     * file is only parsed again if it has changed since the last call.
      * 
      * @return a  array of crayon colors.
      * @throws java.io.FileNotFoundException
@@ -105,23 +126,75 @@ import java.util.Scanner;
      */
     public static int[] getPalette () throws FileNotFoundException
     {
-        int[] colors = new int[120];         // 120 Crayloa colors.
-        File f = new File("palette.txt");
-        Scanner in = new Scanner(f);
+        return getPalette(new File("palette.txt"));
+    }
+    
+    /**
+     * This method gets the colors of a palette file, one "red,green,blue"
+     * line per color. The file is only parsed again if it has changed since
+     * the last call.
+     * 
+     * @param f the palette file.
+     * @return an array of the palette's colors.
+     * @throws java.io.FileNotFoundException
+     */
+    public static int[] getPalette (File f) throws FileNotFoundException
+    {
+        try
+        {
+            // The cached array is shared, so callers get their own copy.
+            return AssetCache.getShared().get(f, PALETTE_LOADER).clone();
+        } catch (FileNotFoundException ex)
+        {
+            throw ex;
+        } catch (IOException ex)
+        {
+            // The Scanner hides read errors, so this is a palette with no colors.
+            throw new UncheckedIOException(ex);
+        }
+    }
+    
+    /**
+     * This method reads the colors of a palette file, like the 120 Crayola
+     * (tm) crayon colors. Blank lines are skipped.
+     * 
+     * @param f the palette file.
+     * @return a  array of palette colors.
+     * @throws java.io.FileNotFoundException
+     * @throws IOException if the file has no colors.
+     */
+    private static int[] readPalette (File f) throws IOException
+    {
+        int[] colors = new int[120];         // Room for 120 Crayola colors.
+        int count = 0;                       // The colors read so far.
         String rgbString;
         String[] channels;
         
-        // Load all 120 colors.
-        for (int i = 0; i < 120; i++)
+        // Load every color in the file.
+        try (Scanner in = new Scanner(f))
         {
-            rgbString = in.nextLine();
-            channels = rgbString.split(",");
-            colors[i] = encodeToRGBA(Integer.parseInt(channels[0]), 
-                    Integer.parseInt(channels[1]), 
-                    Integer.parseInt(channels[2]), 0);
+            while (in.hasNextLine())
+            {
+                rgbString = in.nextLine().trim();
+
+                if (rgbString.isEmpty())
+                    continue;
+
+                if (count == colors.length)
+                    colors = Arrays.copyOf(colors, 2 * count);
+
+                channels = rgbString.split(",");
+                colors[count++] = encodeToRGBA(Integer.parseInt(channels[0].trim()), 
+                        Integer.parseInt(channels[1].trim()), 
+                        Integer.parseInt(channels[2].trim()), 0);
+            }
         }
         
-        return colors;
+        // Every pixel needs a color to be matched to.
+        if (count == 0)
+            throw new IOException(f + " has no colors");
+        
+        return Arrays.copyOf(colors, count);
     }
     
     /**
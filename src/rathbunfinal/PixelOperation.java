@@ -0,0 +1,33 @@
+package rathbunfinal;
+
+/**
+ * An operation that computes each pixel only from the pixel's old value, such
+ * as grayscale or negative. Operations like these can be run one after
+ * another on a row while it is still in the cache.
+ *
+ * @author Jared Rathbun
+ */
+@FunctionalInterface
+public interface PixelOperation
+{
+    /**
+     * Returns the new value of a pixel.
+     *
+     * @param rgba The RGBA pixel value from the image.
+     * @return The new RGBA pixel value.
+     */
+    int apply(int rgba);
+
+    /**
+     * Applies the operation to a run of pixels in place.
+     *
+     * @param pixels The pixels of the image, row by row.
+     * @param from The index of the first pixel.
+     * @param to One past the index of the last pixel.
+     */
+    default void apply(int[] pixels, int from, int to)
+    {
+        for (int p = from; p < to; p++)
+            pixels[p] = apply(pixels[p]);
+    }
+}
@@ -0,0 +1,96 @@
+package rathbunfinal;
+
+/**
+ * The pixel operations behind the Image methods that only look at one pixel
+ * at a time.
+ *
+ * @author Jared Rathbun
+ */
+public class PointOperations
+{
+    /**
+     * Turns each pixel gray.
+     */
+    public static final PixelOperation GRAYSCALE = new Grayscale();
+
+    /**
+     * Flips each pixel's colors to a negative value.
+     */
+    public static final PixelOperation NEGATIVE = new Negative();
+
+    /**
+     * This class only holds constants and static methods.
+     */
+    private PointOperations()
+    {
+    }
+
+    /**
+     * This method returns an operation that replaces each pixel with the
+     * closest color in the palette.
+     *
+     * @param palette The palette to map the pixels to.
+     * @return The palette operation.
+     */
+    public static PixelOperation palette(PaletteMap palette)
+    {
+        return palette::nearestColor;
+    }
+
+    /**
+     * The grayscale operation. Each channel is set to the average of the red,
+     * green and blue channels, rounded to the nearest whole number. The row
+     * loop only uses int adds, multiplies, shifts and masks, so the JIT can
+     * turn it into SIMD instructions.
+     */
+    private static final class Grayscale implements PixelOperation
+    {
+        @Override
+        public int apply(int rgba)
+        {
+            return gray(rgba);
+        }
+
+        @Override
+        public void apply(int[] pixels, int from, int to)
+        {
+            for (int p = from; p < to; p++)
+                pixels[p] = gray(pixels[p]);
+        }
+
+        /**
+         * Returns the grayscale version of the entered rgba value.
+         */
+        private static int gray(int rgba)
+        {
+            int sum = ((rgba >> 16) & 0xFF) + ((rgba >> 8) & 0xFF) + (rgba & 0xFF);
+
+            // (sum + 1) / 3 is the rounded average. For sums this small,
+            // multiplying by 21846 / 65536 gives the same answer as dividing.
+            int gray = ((sum + 1) * 21846) >>> 16;
+
+            return (rgba & 0xFF000000) | (gray * 0x010101);
+        }
+    }
+
+    /**
+     * The negative operation. Subtracting a channel from 255 is the same as
+     * flipping its bits, so the red, green and blue bits are flipped all at
+     * once and the alpha channel is left alone.
+     */
+    private static final class Negative implements PixelOperation
+    {
+        @Override
+        public int apply(int rgba)
+        {
+            return rgba ^ 0x00FFFFFF;
+        }
+
+        @Override
+        public void apply(int[] pixels, int from, int to)
+        {
+            for (int p = from; p < to; p++)
+                pixels[p] ^= 0x00FFFFFF;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package rathbunfinal;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * This class makes small copies of images for showing on the screen. The
+ * image is halved with 2x2 averages, in parallel bands, until it is less than
+ * twice the size wanted, and a single bilinear step makes up the rest. The
+ * aspect ratio is always kept. Previews of files are decoded with
+ * subsampling, so only about as many pixels as the preview needs are read,
+ * and the last few are cached.
+ *
+ * @author Jared Rathbun
+ */
+public class Preview
+{
+    // The number of file previews kept around at once.
+    private static final int MAX_CACHED_PREVIEWS = 8;
+
+    // The file previews made so far, keyed by file, modification time and size.
+    private static final Map<String, BufferedImage> cache =
+            new LinkedHashMap<String, BufferedImage>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> e)
+        {
+            return size() > MAX_CACHED_PREVIEWS;
+        }
+    };
+
+    /**
+     * This class only holds static methods.
+     */
+    private Preview()
+    {
+    }
+
+    /**
+     * This method returns the largest size with the image's aspect ratio that
+     * fits in the bounds, never bigger than the image itself.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param maxWidth The widest the preview may be.
+     * @param maxHeight The tallest the preview may be.
+     * @return The size of the preview, at least 1 by 1.
+     */
+    public static Dimension fit(int width, int height, int maxWidth, int maxHeight)
+    {
+        double scale = Math.min(1.0, Math.min((double) maxWidth / width,
+                (double) maxHeight / height));
+
+        return new Dimension(Math.max(1, (int) Math.round(width * scale)),
+                Math.max(1, (int) Math.round(height * scale)));
+    }
+
+    /**
+     * This method makes a preview of an image that fits in the bounds.
+     *
+     * @param image The image.
+     * @param maxWidth The widest the preview may be.
+     * @param maxHeight The tallest the preview may be.
+     * @return The preview, or the image itself if it already fits.
+     */
+    public static BufferedImage scale(BufferedImage image, int maxWidth, int maxHeight)
+    {
+        return scaleTo(image, fit(image.getWidth(), image.getHeight(), maxWidth, maxHeight));
+    }
+
+    /**
+     * This method scales an image down to the given size.
+     *
+     * @param image The image.
+     * @param size The size of the result, no bigger than the image.
+     * @return The scaled image, or the image itself if it is already that size.
+     */
+    private static BufferedImage scaleTo(BufferedImage image, Dimension size)
+    {
+        if (size.width == image.getWidth() && size.height == image.getHeight())
+            return image;
+
+        BufferedImage scaled = image;
+
+        // Subimages are copied too, since halve reads the int array directly.
+        if (!Image.isIntRaster(scaled))
+            scaled = Image.toIntRaster(scaled);
+
+        // Each halving averages whole blocks of pixels, so nothing is skipped.
+        while (scaled.getWidth() >= 2 * size.width && scaled.getHeight() >= 2 * size.height)
+            scaled = halve(scaled);
+
+        if (scaled.getWidth() == size.width && scaled.getHeight() == size.height)
+            return scaled;
+
+        // The last step is less than 2x, where bilinear is as good as averaging.
+        BufferedImage result = new BufferedImage(size.width, size.height, scaled.getType());
+        Graphics2D g = result.createGraphics();
+
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(scaled, 0, 0, size.width, size.height, null);
+        g.dispose();
+
+        return result;
+    }
+
+    /**
+     * This method makes a preview of an image file that fits in the bounds.
+     * The file is decoded with subsampling, skipping rows and columns that the
+     * preview would average away anyway, so a large file is read in a
+     * fraction of the time. The preview is cached until the file changes.
+     *
+     * @param file The image file.
+     * @param maxWidth The widest the preview may be.
+     * @param maxHeight The tallest the preview may be.
+     * @return The preview.
+     * @throws IOException if the file cannot be read.
+     */
+    public static BufferedImage read(File file, int maxWidth, int maxHeight)
+            throws IOException
+    {
+        String key = file.getAbsolutePath() + ":" + file.lastModified() + ":"
+                + maxWidth + "x" + maxHeight;
+
+        synchronized (cache)
+        {
+            BufferedImage preview = cache.get(key);
+
+            if (preview != null)
+                return preview;
+        }
+
+        BufferedImage preview = RawImage.accepts(file)
+                ? scale(RawImage.read(file), maxWidth, maxHeight)
+                : decodeSubsampled(file, maxWidth, maxHeight);
+
+        synchronized (cache)
+        {
+            cache.put(key, preview);
+        }
+
+        return preview;
+    }
+
+    /**
+     * This method reads the size of an image file without decoding it.
+     *
+     * @param file The image file.
+     * @return The width and height of the image.
+     * @throws IOException if the file cannot be read.
+     */
+    public static Dimension sizeOf(File file) throws IOException
+    {
+        if (RawImage.accepts(file))
+            return RawImage.sizeOf(file);
+
+        try (ImageInputStream in = open(file))
+        {
+            ImageReader reader = ImageIO.getImageReaders(in).next();
+
+            try
+            {
+                reader.setInput(in);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * This method decodes every nth row and column of a file, with n as big
+     * as it can be while the result is still at least as big as the preview,
+     * then scales it the rest of the way. The size of the preview comes from
+     * the full image, so subsampling does not change its aspect ratio.
+     *
+     * @param file The image file.
+     * @param maxWidth The widest the preview may be.
+     * @param maxHeight The tallest the preview may be.
+     * @return The preview.
+     * @throws IOException if the file cannot be read.
+     */
+    private static BufferedImage decodeSubsampled(File file, int maxWidth, int maxHeight)
+            throws IOException
+    {
+        try (ImageInputStream in = open(file))
+        {
+            ImageReader reader = ImageIO.getImageReaders(in).next();
+
+            try
+            {
+                reader.setInput(in);
+
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                Dimension size = fit(width, height, maxWidth, maxHeight);
+                int step = Math.max(1, Math.min(width / size.width, height / size.height));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+
+                return scaleTo(reader.read(0, param), size);
+            } finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * This method opens an image file for reading.
+     *
+     * @param file The image file.
+     * @return The stream, which has at least one reader.
+     * @throws IOException if the file cannot be opened or is not an image.
+     */
+    private static ImageInputStream open(File file) throws IOException
+    {
+        ImageInputStream in = ImageIO.createImageInputStream(file);
+
+        if (in == null)
+            throw new IOException("Cannot open " + file);
+
+        if (!ImageIO.getImageReaders(in).hasNext())
+        {
+            in.close();
+            throw new IOException("Not an image: " + file);
+        }
+
+        return in;
+    }
+
+    /**
+     * This method halves an image, each pixel the average of a 2x2 block.
+     *
+     * @param image An image of TYPE_INT_RGB or TYPE_INT_ARGB.
+     * @return The image at half the width and height.
+     */
+    private static BufferedImage halve(BufferedImage image)
+    {
+        int width = image.getWidth();
+        int outWidth = width / 2;
+        int outHeight = image.getHeight() / 2;
+        BufferedImage half = new BufferedImage(outWidth, outHeight, image.getType());
+        int[] src = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] dst = ((DataBufferInt) half.getRaster().getDataBuffer()).getData();
+
+        TileScheduler.getDefault().forEachBand(outHeight, (first, last) ->
+        {
+            for (int j = first; j < last; j++)
+            {
+                int top = 2 * j * width;
+                int bottom = top + width;
+
+                for (int i = 0; i < outWidth; i++)
+                    dst[j * outWidth + i] = average(src[top + 2 * i], src[top + 2 * i + 1],
+                            src[bottom + 2 * i], src[bottom + 2 * i + 1]);
+            }
+        });
+
+        return half;
+    }
+
+    /**
+     * This method averages four ARGB pixels, channel by channel, rounding.
+     *
+     * @return The average pixel.
+     */
+    private static int average(int p0, int p1, int p2, int p3)
+    {
+        // Alpha and green, then red and blue, are added two channels at once.
+        long ag = (p0 & 0xFF00FF00L) + (p1 & 0xFF00FF00L)
+                + (p2 & 0xFF00FF00L) + (p3 & 0xFF00FF00L);
+        int rb = (p0 & 0x00FF00FF) + (p1 & 0x00FF00FF)
+                + (p2 & 0x00FF00FF) + (p3 & 0x00FF00FF);
+
+        ag = ((ag + 0x02000200L) >>> 2) & 0xFF00FF00L;
+        rb = ((rb + 0x00020002) >>> 2) & 0x00FF00FF;
+
+        return (int) ag | rb;
+    }
+}
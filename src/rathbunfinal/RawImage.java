@@ -0,0 +1,231 @@
+package rathbunfinal;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * This class reads and writes images in a raw, uncompressed format meant for
+ * results that are handed from one run of the program to the next. There is
+ * no codec and no loss: the file is a small header followed by the packed
+ * ARGB pixels, row by row, in little endian order. Files are read and written
+ * through FileChannel.map, so the pixels go between the page cache and the
+ * image's int array in one bulk copy.
+ *
+ * The header is 20 bytes: the magic bytes "ARGB", the version, the width,
+ * the height and the flags, each a 4 byte int. Flag bit 0 is set if the
+ * image has an alpha channel.
+ *
+ * @author Jared Rathbun
+ */
+public class RawImage
+{
+    // The file extension of raw images.
+    public static final String EXTENSION = "argb";
+
+    // The first four bytes of every raw image, "ARGB" in little endian.
+    private static final int MAGIC = 0x42475241;
+
+    // The version of the format written.
+    private static final int VERSION = 1;
+
+    // The size of the header in bytes.
+    private static final int HEADER_BYTES = 20;
+
+    // The flag set for images with an alpha channel.
+    private static final int HAS_ALPHA = 1;
+
+    // The most bytes mapped at once, since a mapping is limited to 2 GB.
+    private static final long MAX_MAP_BYTES = 1L << 30;
+
+    /**
+     * This class only holds static methods.
+     */
+    private RawImage()
+    {
+    }
+
+    /**
+     * This method checks whether a file is named like a raw image.
+     *
+     * @param file A file.
+     * @return True if the file's extension is .argb.
+     */
+    public static boolean accepts(File file)
+    {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith("." + EXTENSION);
+    }
+
+    /**
+     * This method reads a raw image.
+     *
+     * @param file The file to read.
+     * @return The image, TYPE_INT_ARGB if it has an alpha channel and
+     * TYPE_INT_RGB if not.
+     * @throws IOException if the file cannot be read or is not a raw image.
+     */
+    public static BufferedImage read(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            IntBuffer header = readHeader(channel, file);
+            int width = header.get(2);
+            int height = header.get(3);
+            boolean alpha = (header.get(4) & HAS_ALPHA) != 0;
+
+            if (width < 1 || height < 1
+                    || channel.size() != HEADER_BYTES + 4L * width * height)
+                throw new IOException("Truncated raw image: " + file);
+
+            BufferedImage image = new BufferedImage(width, height, alpha
+                    ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+
+            transfer(channel, FileChannel.MapMode.READ_ONLY, pixelsOf(image), width);
+
+            return image;
+        }
+    }
+
+    /**
+     * This method reads the size of a raw image without reading its pixels.
+     *
+     * @param file The file to read.
+     * @return The width and height of the image.
+     * @throws IOException if the file cannot be read or is not a raw image.
+     */
+    public static Dimension sizeOf(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            IntBuffer header = readHeader(channel, file);
+
+            return new Dimension(header.get(2), header.get(3));
+        }
+    }
+
+    /**
+     * This method writes an image as a raw image, replacing the file if it
+     * exists.
+     *
+     * @param image The image. Images that are not TYPE_INT_RGB or
+     * TYPE_INT_ARGB, and subimages, are copied first.
+     * @param file The file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(BufferedImage image, File file) throws IOException
+    {
+        if (!Image.isIntRaster(image))
+            image = Image.toIntRaster(image);
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            IntBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES);
+
+            header.put(MAGIC).put(VERSION).put(width).put(height)
+                    .put(image.getColorModel().hasAlpha() ? HAS_ALPHA : 0);
+
+            transfer(channel, FileChannel.MapMode.READ_WRITE, pixelsOf(image), width);
+        }
+    }
+
+    /**
+     * This method maps the header of a raw image and checks its magic bytes
+     * and version.
+     *
+     * @param channel The open file.
+     * @param file The file, for error messages.
+     * @return The header as ints.
+     * @throws IOException if the file is not a raw image.
+     */
+    private static IntBuffer readHeader(FileChannel channel, File file) throws IOException
+    {
+        if (channel.size() < HEADER_BYTES)
+            throw new IOException("Not a raw image: " + file);
+
+        IntBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+
+        if (header.get(0) != MAGIC)
+            throw new IOException("Not a raw image: " + file);
+        if (header.get(1) != VERSION)
+            throw new IOException("Unsupported raw image version "
+                    + header.get(1) + ": " + file);
+
+        return header;
+    }
+
+    /**
+     * This method copies the pixels between the file and the array, mapping
+     * the file a band of whole rows at a time.
+     *
+     * @param channel The open file.
+     * @param mode READ_ONLY to read the file into the array, READ_WRITE to
+     * write the array to the file.
+     * @param pixels The pixels, row by row.
+     * @param width The width of the image.
+     * @throws IOException if the file cannot be mapped.
+     */
+    private static void transfer(FileChannel channel, FileChannel.MapMode mode,
+            int[] pixels, int width) throws IOException
+    {
+        int bandPixels = (int) Math.max(width, MAX_MAP_BYTES / 4 / width * width);
+
+        for (int from = 0; from < pixels.length; from += bandPixels)
+        {
+            int count = Math.min(bandPixels, pixels.length - from);
+            IntBuffer band = map(channel, mode, HEADER_BYTES + 4L * from, 4L * count);
+
+            if (mode == FileChannel.MapMode.READ_ONLY)
+                band.get(pixels, from, count);
+            else
+                band.put(pixels, from, count);
+        }
+    }
+
+    /**
+     * This method maps part of a file as little endian ints.
+     *
+     * @param channel The open file.
+     * @param mode How the file is mapped.
+     * @param position The first byte mapped.
+     * @param bytes The number of bytes mapped.
+     * @return The mapped ints.
+     * @throws IOException if the file cannot be mapped.
+     */
+    private static IntBuffer map(FileChannel channel, FileChannel.MapMode mode,
+            long position, long bytes) throws IOException
+    {
+        MappedByteBuffer buffer = channel.map(mode, position, bytes);
+
+        return buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    /**
+     * This method returns the int array behind an image.
+     *
+     * @param image An image of TYPE_INT_RGB or TYPE_INT_ARGB that is not a
+     * subimage.
+     * @return The pixels, row by row.
+     */
+    private static int[] pixelsOf(BufferedImage image)
+    {
+        if (!Image.isIntRaster(image))
+            throw new IllegalArgumentException("image must be a whole TYPE_INT_RGB "
+                    + "or TYPE_INT_ARGB image");
+
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
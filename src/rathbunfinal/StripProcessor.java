@@ -0,0 +1,887 @@
+package rathbunfinal;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import org.w3c.dom.NodeList;
+
+/**
+ * This class processes images that are too big to hold in memory. The image
+ * is decoded a strip of rows at a time, the pixel operations are run on the
+ * strip, and the strip is handed to the ImageWriter as it asks for rows. Only
+ * a few strips are in memory at a time, so the memory used depends on the
+ * strip height and not on the image height. Only operations that look at one
+ * pixel at a time can be streamed.
+ *
+ * The PNG and JPEG readers cannot start in the middle of an image, so reading
+ * each strip with ImageReadParam.setSourceRegion would decode every row above
+ * it again, and the work would grow with the square of the number of strips.
+ * Those images are decoded once, top to bottom, on a thread of their own
+ * that hands over each strip as soon as its rows are done. Interlaced PNGs
+ * and progressive JPEGs fill in the rows more than once, and other formats
+ * like TIFF and BMP can seek straight to a strip's rows, so those are still
+ * read a region at a time.
+ *
+ * @author Jared Rathbun
+ */
+public class StripProcessor
+{
+    // The default number of rows decoded at once.
+    public static final int DEFAULT_STRIP_ROWS = 256;
+
+    private final int stripRows; // The number of rows decoded at once.
+
+    /**
+     * Builds a strip processor.
+     *
+     * @param stripRows The number of rows decoded at once.
+     */
+    public StripProcessor(int stripRows)
+    {
+        if (stripRows < 1)
+            throw new IllegalArgumentException("strip rows must be at least 1");
+
+        this.stripRows = stripRows;
+    }
+
+    /**
+     * This method runs a streaming job described by the command line options.
+     *
+     * @param options The command line options and operations.
+     * @return The exit status, 0 if the image was written.
+     * @throws IOException if the image cannot be read or written.
+     */
+    public static int run(Options options) throws IOException
+    {
+        String input = options.get("input", null);
+        String output = options.get("output", null);
+
+        if (input == null || output == null)
+        {
+            System.err.println("Streaming needs --input and --output.");
+            return 2;
+        }
+
+        List<PixelOperation> ops = new ArrayList<>();
+
+        for (String task : options.getOperations())
+        {
+            PixelOperation op = Pipeline.pointOperation(task, options);
+
+            if (op == null)
+            {
+                System.err.println(task + " cannot be streamed.");
+                return 2;
+            }
+
+            ops.add(op);
+        }
+
+        new StripProcessor(options.getInt("strip-rows", DEFAULT_STRIP_ROWS))
+                .process(new File(input), new File(output),
+                        ops.toArray(new PixelOperation[0]));
+
+        return 0;
+    }
+
+    /**
+     * This method reads the input a strip at a time, runs the operations on
+     * each strip and writes the result. The output format comes from the
+     * output file's extension and must be one whose writer asks for the image
+     * a few rows at a time: png, tif or bmp. The JPEG writer asks for the
+     * whole image at once, so it cannot be streamed.
+     *
+     * @param input The image to read.
+     * @param output The file to write.
+     * @param ops The pixel operations, in order.
+     * @throws IOException if the image cannot be read or written.
+     */
+    public void process(File input, File output, PixelOperation... ops)
+            throws IOException
+    {
+        String format = ImageEncoder.formatOf(output);
+
+        if (!format.equals("png") && !format.equals("tif") && !format.equals("bmp"))
+            throw new IOException("Cannot stream " + format + ", use png, tif or bmp");
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(input))
+        {
+            if (in == null)
+                throw new IOException("Cannot open " + input);
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+
+            if (!readers.hasNext())
+                throw new IOException("Not an image: " + input);
+
+            ImageReader reader = readers.next();
+
+            try
+            {
+                reader.setInput(in);
+
+                ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+                StripImage image = new StripImage(reader, ops);
+
+                // The file is removed first, since the stream does not truncate it.
+                Files.deleteIfExists(output.toPath());
+
+                try (ImageOutputStream out = ImageIO.createImageOutputStream(output))
+                {
+                    writer.setOutput(out);
+                    writer.write(image);
+                } finally
+                {
+                    image.close();
+                    writer.dispose();
+                }
+            } finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * An image whose rows are decoded and processed only when the writer asks
+     * for them. The strip holding the last rows asked for is kept, so a writer
+     * that goes through the rows in order decodes each strip once.
+     */
+    private class StripImage implements RenderedImage
+    {
+        private final ImageReader reader;   // Decodes the strips.
+        private final PixelOperation[] ops; // The operations run on each strip.
+        private final int width;            // The width of the image.
+        private final int height;           // The height of the image.
+        private final ColorModel colorModel;   // The color model of every strip.
+        private final SampleModel sampleModel; // The layout of one strip.
+
+        private final SequentialDecoder sequential; // Decodes the strips in order, or null.
+
+        private Raster strip;   // The strip decoded last.
+        private int stripY;     // The first row of that strip.
+
+        StripImage(ImageReader reader, PixelOperation[] ops) throws IOException
+        {
+            this.reader = reader;
+            this.ops = ops;
+            width = reader.getWidth(0);
+            height = reader.getHeight(0);
+            sequential = SequentialDecoder.start(reader, stripRows);
+
+            // The first strip tells us what the strips look like.
+            BufferedImage first;
+
+            try
+            {
+                first = decode(0);
+            } catch (IOException | RuntimeException ex)
+            {
+                close();
+                throw ex;
+            }
+
+            colorModel = first.getColorModel();
+            sampleModel = first.getSampleModel();
+        }
+
+        /**
+         * Decodes and processes the strip that starts at row y. The strip is
+         * taken from the sequential decoder if it is the next one it has,
+         * and read as a region otherwise.
+         */
+        private BufferedImage decode(int y) throws IOException
+        {
+            int rows = Math.min(stripRows, height - y);
+
+            Metrics.Sample sample = Metrics.start("decode");
+            BufferedImage decoded = (sequential == null) ? null : sequential.take(y);
+
+            if (decoded == null)
+            {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(0, y, width, rows));
+                decoded = reader.read(0, param);
+            }
+
+            Image img = new Image(decoded);
+            long pixels = (long) width * rows;
+            Metrics.stop(sample, pixels);
+
+            sample = Metrics.start("stream");
+            img.applyPointOperations(ops);
+            Metrics.stop(sample, pixels);
+
+            strip = img.getImage().getRaster().createTranslatedChild(0, y);
+            stripY = y;
+
+            return img.getImage();
+        }
+
+        /**
+         * Stops the sequential decoder, if there is one.
+         */
+        void close()
+        {
+            if (sequential != null)
+                sequential.stop();
+        }
+
+        /**
+         * Returns the strip that holds row y, decoding it if needed.
+         */
+        private Raster stripFor(int y)
+        {
+            if (y < stripY || y >= stripY + strip.getHeight())
+            {
+                try
+                {
+                    decode(y - y % stripRows);
+                } catch (IOException ex)
+                {
+                    // RenderedImage cannot throw IOException, the writer
+                    // passes this on to the caller.
+                    throw new IllegalStateException("Cannot decode rows at " + y, ex);
+                }
+            }
+
+            return strip;
+        }
+
+        @Override
+        public Raster getData(Rectangle rect)
+        {
+            WritableRaster result = colorModel.createCompatibleWritableRaster(
+                    rect.width, rect.height).createWritableTranslatedChild(rect.x, rect.y);
+
+            // Copy each strip that overlaps the rectangle.
+            for (int y = rect.y; y < rect.y + rect.height; )
+            {
+                Raster s = stripFor(y);
+                int rows = Math.min(s.getMinY() + s.getHeight(), rect.y + rect.height) - y;
+
+                result.setRect(s.createChild(rect.x, y, rect.width, rows,
+                        rect.x, y, null));
+                y += rows;
+            }
+
+            return result;
+        }
+
+        @Override
+        public Raster getData()
+        {
+            return getData(new Rectangle(0, 0, width, height));
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster)
+        {
+            Rectangle rect = (raster == null) ? new Rectangle(0, 0, width, height)
+                    : raster.getBounds();
+            Raster data = getData(rect);
+
+            if (raster == null)
+                return (WritableRaster) data;
+
+            raster.setRect(data);
+            return raster;
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY)
+        {
+            return getData(new Rectangle(0, tileY * stripRows, width,
+                    Math.min(stripRows, height - tileY * stripRows)));
+        }
+
+        @Override
+        public Vector<RenderedImage> getSources()
+        {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name)
+        {
+            return java.awt.Image.UndefinedProperty;
+        }
+
+        @Override
+        public String[] getPropertyNames()
+        {
+            return null;
+        }
+
+        @Override
+        public ColorModel getColorModel()
+        {
+            return colorModel;
+        }
+
+        @Override
+        public SampleModel getSampleModel()
+        {
+            return sampleModel;
+        }
+
+        @Override
+        public int getWidth()
+        {
+            return width;
+        }
+
+        @Override
+        public int getHeight()
+        {
+            return height;
+        }
+
+        @Override
+        public int getMinX()
+        {
+            return 0;
+        }
+
+        @Override
+        public int getMinY()
+        {
+            return 0;
+        }
+
+        @Override
+        public int getNumXTiles()
+        {
+            return 1;
+        }
+
+        @Override
+        public int getNumYTiles()
+        {
+            return (height + stripRows - 1) / stripRows;
+        }
+
+        @Override
+        public int getMinTileX()
+        {
+            return 0;
+        }
+
+        @Override
+        public int getMinTileY()
+        {
+            return 0;
+        }
+
+        @Override
+        public int getTileWidth()
+        {
+            return width;
+        }
+
+        @Override
+        public int getTileHeight()
+        {
+            return stripRows;
+        }
+
+        @Override
+        public int getTileGridXOffset()
+        {
+            return 0;
+        }
+
+        @Override
+        public int getTileGridYOffset()
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Decodes a whole PNG or JPEG image in one pass on its own thread, and
+     * hands over each strip as soon as its last row is done. The reader
+     * writes into an image as tall as the whole one, but its rows wrap
+     * around a buffer a little more than a strip high, so only a few strips
+     * are ever in memory. If the rows do not come in order, or anything else goes
+     * wrong, no more strips are handed over and the rest are read a region
+     * at a time instead.
+     */
+    private static class SequentialDecoder implements Runnable, IIOReadUpdateListener
+    {
+        // The native metadata formats of the JPEG and PNG readers.
+        private static final String JPEG_METADATA = "javax_imageio_jpeg_image_1.0";
+        private static final String PNG_METADATA = "javax_imageio_png_1.0";
+
+        // The rows the ring keeps beyond a strip, since the reader may report
+        // a few rows at once that run past the end of a strip.
+        private static final int RING_SPARE_ROWS = 16;
+
+        private final ImageReader reader;     // Decodes the image.
+        private final ColorModel colorModel;  // The colors of the decoded rows.
+        private final SampleModel sampleModel; // The layout of the whole image.
+        private final RowRing ring;           // Holds the decoded rows.
+        private final BufferedImage image;    // The whole image, over the ring.
+        private final int stripRows;          // The number of rows in a strip.
+        private final int height;             // The height of the image.
+        private final Thread thread;          // Runs the reader.
+
+        // The strips, in order, then null once the image is done or the
+        // reason the decoding stopped.
+        private final BlockingQueue<Object> strips = new ArrayBlockingQueue<>(1);
+
+        private volatile boolean stopped; // Set when no more strips are wanted.
+        private int decodedRows;  // The rows the reader has done, on its thread.
+        private int handedRows;   // The rows handed over, on the reader's thread.
+        private int nextRow;      // The first row of the next strip to take.
+        private boolean failed;   // Set once no more strips will come.
+
+        private SequentialDecoder(ImageReader reader, ImageTypeSpecifier type,
+                int width, int height, int stripRows)
+        {
+            this.reader = reader;
+            this.stripRows = stripRows;
+            this.height = height;
+            colorModel = type.getColorModel();
+            sampleModel = type.getSampleModel(width, height);
+            ring = new RowRing(sampleModel.getDataType(), scanlineStride(sampleModel),
+                    height, stripRows + RING_SPARE_ROWS);
+            image = new BufferedImage(colorModel, Raster.createWritableRaster(
+                    sampleModel, ring, null), colorModel.isAlphaPremultiplied(), null);
+            thread = BatchProcessor.namedThreads("stream-decode").newThread(this);
+        }
+
+        /**
+         * This method starts decoding an image in one pass, if it is one that
+         * would otherwise be decoded again for each strip.
+         *
+         * @param reader The reader, with its input set.
+         * @param stripRows The number of rows in a strip.
+         * @return The decoder, or null if the image should be read a region
+         * at a time.
+         * @throws IOException if the image's header cannot be read.
+         */
+        static SequentialDecoder start(ImageReader reader, int stripRows)
+                throws IOException
+        {
+            if (!isSequential(reader))
+                return null;
+
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+
+            if (!types.hasNext())
+                return null;
+
+            ImageTypeSpecifier type = types.next();
+            SampleModel layout = type.getSampleModel(1, 1);
+            int stride = scanlineStride(type.getSampleModel(width, 1));
+
+            // Every row must be one run of elements in one bank, and the
+            // ring's indexes must fit in an int.
+            if (stride < 0 || layout.getNumDataElements() < 1
+                    || (long) stride * height > Integer.MAX_VALUE
+                    || (layout.getDataType() != DataBuffer.TYPE_BYTE
+                        && layout.getDataType() != DataBuffer.TYPE_USHORT
+                        && layout.getDataType() != DataBuffer.TYPE_INT))
+                return null;
+
+            SequentialDecoder decoder = new SequentialDecoder(reader, type, width,
+                    height, stripRows);
+            decoder.thread.start();
+
+            return decoder;
+        }
+
+        /**
+         * This method checks whether the image is a PNG that is not
+         * interlaced or a JPEG that is not progressive, whose rows are decoded
+         * once each, from the top down.
+         *
+         * @param reader The reader, with its input set.
+         * @return True if the image should be decoded in one pass.
+         * @throws IOException if the image's header cannot be read.
+         */
+        private static boolean isSequential(ImageReader reader) throws IOException
+        {
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            String format = (metadata == null) ? null
+                    : metadata.getNativeMetadataFormatName();
+
+            if (JPEG_METADATA.equals(format))
+                return !"2".equals(attribute(metadata, format, "sof", "process"));
+            if (PNG_METADATA.equals(format))
+                return "none".equals(attribute(metadata, format, "IHDR", "interlaceMethod"));
+
+            return false;
+        }
+
+        /**
+         * This method returns an attribute of the first element with a name
+         * in an image's native metadata.
+         *
+         * @return The attribute, or null if there is no such element.
+         */
+        private static String attribute(IIOMetadata metadata, String format,
+                String element, String name)
+        {
+            NodeList nodes = ((IIOMetadataNode) metadata.getAsTree(format))
+                    .getElementsByTagName(element);
+
+            return (nodes.getLength() == 0) ? null
+                    : ((IIOMetadataNode) nodes.item(0)).getAttribute(name);
+        }
+
+        /**
+         * This method returns the number of data elements in each row of a
+         * layout whose rows are each one run of elements in one bank.
+         *
+         * @param layout The layout.
+         * @return The number of elements, or -1 for any other layout.
+         */
+        private static int scanlineStride(SampleModel layout)
+        {
+            if (layout instanceof ComponentSampleModel)
+            {
+                ComponentSampleModel component = (ComponentSampleModel) layout;
+
+                for (int bank : component.getBankIndices())
+                    if (bank != 0)
+                        return -1;
+
+                return component.getScanlineStride();
+            }
+            if (layout instanceof SinglePixelPackedSampleModel)
+                return ((SinglePixelPackedSampleModel) layout).getScanlineStride();
+            if (layout instanceof MultiPixelPackedSampleModel
+                    && ((MultiPixelPackedSampleModel) layout).getDataBitOffset() == 0)
+                return ((MultiPixelPackedSampleModel) layout).getScanlineStride();
+
+            return -1;
+        }
+
+        /**
+         * This method returns the strip that starts at row y, waiting for it
+         * to be decoded.
+         *
+         * @param y The first row of the strip.
+         * @return The strip, or null if it is not the next one or no more
+         * strips will come. The decoding is stopped by then, so the reader
+         * is free for region reads.
+         */
+        BufferedImage take(int y)
+        {
+            if (failed || y != nextRow)
+            {
+                stop();
+                return null;
+            }
+
+            try
+            {
+                Object next = strips.take();
+
+                if (next instanceof BufferedImage)
+                {
+                    nextRow += ((BufferedImage) next).getHeight();
+                    return (BufferedImage) next;
+                }
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            stop();
+            return null;
+        }
+
+        /**
+         * This method stops the decoding, if it is still going, and waits for
+         * the reader to be done with the image.
+         */
+        void stop()
+        {
+            failed = true;
+            stopped = true;
+            reader.abort();
+            thread.interrupt();
+
+            boolean interrupted = false;
+
+            while (thread.isAlive())
+            {
+                try
+                {
+                    thread.join();
+                } catch (InterruptedException ex)
+                {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        @Override
+        public void run()
+        {
+            Object last = null;
+
+            try
+            {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setDestination(image);
+
+                reader.addIIOReadUpdateListener(this);
+                reader.read(0, param);
+
+                if (handedRows < height)
+                {
+                    if (decodedRows < height)
+                        throw new IOException("Decoding stopped at row " + decodedRows);
+
+                    handOver(height);
+                }
+            } catch (IOException | RuntimeException ex)
+            {
+                last = ex;
+            } catch (InterruptedException ex)
+            {
+                // Stopped, so nothing more is wanted.
+                return;
+            } finally
+            {
+                reader.removeIIOReadUpdateListener(this);
+            }
+
+            try
+            {
+                put((last == null) ? Boolean.TRUE : last);
+            } catch (InterruptedException ex)
+            {
+                // Stopped, so nothing more is wanted.
+            }
+        }
+
+        @Override
+        public void imageUpdate(ImageReader source, BufferedImage theImage, int minX,
+                int minY, int width, int rows, int periodX, int periodY, int[] bands)
+        {
+            // A row that comes again, or a row that is skipped, means the
+            // image is not decoded once from the top down.
+            if (minY != decodedRows || periodY != 1
+                    || minY + rows - handedRows > ring.getRows())
+                throw new IllegalStateException("Rows decoded out of order");
+
+            decodedRows = minY + rows;
+
+            try
+            {
+                while (decodedRows - handedRows >= stripRows)
+                    handOver(handedRows + stripRows);
+            } catch (InterruptedException ex)
+            {
+                throw new IllegalStateException("Stopped", ex);
+            }
+        }
+
+        /**
+         * This method copies the rows up to the given one out of the ring and
+         * hands them over as a strip, waiting until the last strip is taken.
+         *
+         * @param end The row after the last row of the strip.
+         * @throws InterruptedException if the decoding is stopped.
+         */
+        private void handOver(int end) throws InterruptedException
+        {
+            int rows = end - handedRows;
+            WritableRaster raster = Raster.createWritableRaster(
+                    sampleModel.createCompatibleSampleModel(image.getWidth(), rows), null);
+
+            ring.copyRows(handedRows, rows, raster.getDataBuffer());
+            handedRows = end;
+
+            put(new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(),
+                    null));
+        }
+
+        /**
+         * This method hands over a strip, or the end of the strips, waiting
+         * for room unless the decoding has been stopped.
+         *
+         * @param item The strip, or what ended the decoding.
+         * @throws InterruptedException if the decoding is stopped.
+         */
+        private void put(Object item) throws InterruptedException
+        {
+            while (!strips.offer(item, 10, TimeUnit.MILLISECONDS))
+                if (stopped)
+                    throw new InterruptedException();
+        }
+
+        @Override
+        public void passStarted(ImageReader source, BufferedImage theImage, int pass,
+                int minPass, int maxPass, int minX, int minY, int periodX, int periodY,
+                int[] bands)
+        {
+        }
+
+        @Override
+        public void passComplete(ImageReader source, BufferedImage theImage)
+        {
+        }
+
+        @Override
+        public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail,
+                int pass, int minPass, int maxPass, int minX, int minY, int periodX,
+                int periodY, int[] bands)
+        {
+        }
+
+        @Override
+        public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail,
+                int minX, int minY, int width, int height, int periodX, int periodY,
+                int[] bands)
+        {
+        }
+
+        @Override
+        public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail)
+        {
+        }
+    }
+
+    /**
+     * The data of an image whose rows wrap around a buffer a few rows high,
+     * so row y is kept where row y modulo the buffer's height would be.
+     */
+    private static class RowRing extends DataBuffer
+    {
+        private final DataBuffer data; // The rows being kept.
+        private final int stride;      // The number of elements in a row.
+        private final int rows;        // The number of rows kept.
+        private int rowStart;          // The first element of the last row used.
+        private int rowOffset;         // Where that row is kept.
+
+        RowRing(int dataType, int stride, int height, int rows)
+        {
+            super(dataType, stride * height);
+
+            this.stride = stride;
+            this.rows = rows;
+
+            int size = stride * rows;
+
+            if (dataType == TYPE_BYTE)
+                data = new DataBufferByte(size);
+            else if (dataType == TYPE_USHORT)
+                data = new DataBufferUShort(size);
+            else
+                data = new DataBufferInt(size);
+        }
+
+        /**
+         * @return The number of rows kept.
+         */
+        int getRows()
+        {
+            return rows;
+        }
+
+        /**
+         * This method copies whole rows into another buffer.
+         *
+         * @param first The first row to copy.
+         * @param count The number of rows.
+         * @param dst The buffer, of the same type and with the same number of
+         * elements in a row.
+         */
+        void copyRows(int first, int count, DataBuffer dst)
+        {
+            for (int r = 0; r < count; r++)
+            {
+                int from = ((first + r) % rows) * stride;
+                int to = r * stride;
+
+                if (data instanceof DataBufferByte)
+                    System.arraycopy(((DataBufferByte) data).getData(), from,
+                            ((DataBufferByte) dst).getData(), to, stride);
+                else if (data instanceof DataBufferUShort)
+                    System.arraycopy(((DataBufferUShort) data).getData(), from,
+                            ((DataBufferUShort) dst).getData(), to, stride);
+                else
+                    System.arraycopy(((DataBufferInt) data).getData(), from,
+                            ((DataBufferInt) dst).getData(), to, stride);
+            }
+        }
+
+        /**
+         * This method returns where an element of the whole image is kept.
+         * The readers go along a row, so the place of the last row used is
+         * kept to save a division for each element.
+         *
+         * @param i The index of the element in the whole image.
+         * @return The index of the element in the rows being kept.
+         */
+        private int index(int i)
+        {
+            int x = i - rowStart;
+
+            if (x < 0 || x >= stride)
+            {
+                int y = i / stride;
+
+                rowStart = y * stride;
+                rowOffset = (y % rows) * stride;
+                x = i - rowStart;
+            }
+
+            return rowOffset + x;
+        }
+
+        @Override
+        public int getElem(int bank, int i)
+        {
+            return data.getElem(index(i));
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val)
+        {
+            data.setElem(index(i), val);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package rathbunfinal;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class splits an image into bands of rows and runs an operation on
+ * each band in parallel. Bands never overlap, so as long as an operation only
+ * writes the rows it was given the output is the same no matter how many
+ * threads are used or in which order the bands finish.
+ *
+ * @author Jared Rathbun
+ */
+public class TileScheduler
+{
+    // The system property used to pick the number of threads.
+    public static final String PARALLELISM_PROPERTY = "rathbunfinal.threads";
+
+    // The fewest rows worth handing to a thread on their own.
+    private static final int MIN_BAND_ROWS = 16;
+
+    // The scheduler used by the Image operations.
+    private static TileScheduler defaultScheduler =
+            new TileScheduler(Integer.getInteger(PARALLELISM_PROPERTY,
+                    Runtime.getRuntime().availableProcessors()));
+
+    private final ForkJoinPool pool; // The threads that run the bands.
+    private final int parallelism;   // The number of threads.
+
+    /**
+     * An operation that is run on a band of rows.
+     */
+    public interface BandTask
+    {
+        /**
+         * Runs the operation on the rows from firstRow up to, but not
+         * including, lastRow.
+         *
+         * @param firstRow The first row of the band.
+         * @param lastRow One past the last row of the band.
+         */
+        void run(int firstRow, int lastRow);
+    }
+
+    /**
+     * Builds a scheduler that uses the given number of threads.
+     *
+     * @param parallelism The number of threads, at least 1.
+     */
+    public TileScheduler(int parallelism)
+    {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+
+        this.parallelism = parallelism;
+        this.pool = (parallelism == 1) ? null : new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * This method returns the scheduler used by the Image operations.
+     *
+     * @return The default scheduler.
+     */
+    public static synchronized TileScheduler getDefault()
+    {
+        return defaultScheduler;
+    }
+
+    /**
+     * This method changes the number of threads used by the Image operations.
+     * The old scheduler is not shut down, since other threads may still be
+     * running operations on it. Its threads end on their own once they have
+     * been idle for a while.
+     *
+     * @param parallelism The number of threads, at least 1.
+     */
+    public static synchronized void setParallelism(int parallelism)
+    {
+        if (parallelism == defaultScheduler.parallelism)
+            return;
+
+        defaultScheduler = new TileScheduler(parallelism);
+    }
+
+    /**
+     * This method returns the number of threads used by the scheduler.
+     *
+     * @return The number of threads.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * This method runs the task over every row of an image of the given
+     * height and returns when all of the bands are done.
+     *
+     * @param height The number of rows in the image.
+     * @param task The operation to run on each band.
+     */
+    public void forEachBand(int height, BandTask task)
+    {
+        // Each thread gets a few bands so uneven bands even out.
+        int bandRows = Math.max(MIN_BAND_ROWS, height / (parallelism * 4) + 1);
+
+        if (pool == null || height <= bandRows)
+            task.run(0, height);
+        else
+            pool.invoke(new Band(task, 0, height, bandRows));
+    }
+
+    /**
+     * This method runs the task over every row of an image, handing the rows
+     * out one at a time, top to bottom, to each of the threads as they come
+     * free. It is for operations where a row depends on the row above it,
+     * like error diffusion. A row may wait for the row above it to get ahead,
+     * since that row was handed out first and is already being worked on.
+     *
+     * @param height The number of rows in the image.
+     * @param task The operation to run on each row. Its band is a single row,
+     * or every row when there is only one thread.
+     */
+    public void forEachRowInOrder(int height, BandTask task)
+    {
+        if (pool == null || height < 2)
+        {
+            task.run(0, height);
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger(); // The next row to hand out.
+        Runnable worker = () ->
+        {
+            for (int j = next.getAndIncrement(); j < height; j = next.getAndIncrement())
+                task.run(j, j + 1);
+        };
+
+        ForkJoinTask<?>[] workers = new ForkJoinTask<?>[Math.min(parallelism, height)];
+
+        for (int k = 0; k < workers.length; k++)
+            workers[k] = pool.submit(worker);
+
+        for (ForkJoinTask<?> w : workers)
+            w.join();
+    }
+
+    /**
+     * This method stops the threads of the scheduler.
+     */
+    public void shutdown()
+    {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    /**
+     * A range of rows that splits itself in half until it is small enough.
+     */
+    private static class Band extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final BandTask task;
+        private final int firstRow;
+        private final int lastRow;
+        private final int bandRows;
+
+        Band(BandTask task, int firstRow, int lastRow, int bandRows)
+        {
+            this.task = task;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.bandRows = bandRows;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (lastRow - firstRow <= bandRows)
+            {
+                task.run(firstRow, lastRow);
+                return;
+            }
+
+            int middle = (firstRow + lastRow) >>> 1;
+
+            invokeAll(new Band(task, firstRow, middle, bandRows),
+                    new Band(task, middle, lastRow, bandRows));
+        }
+    }
+}
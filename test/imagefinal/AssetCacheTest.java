@@ -0,0 +1,112 @@
+package imagefinal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import rathbunfinal.AssetCache;
+import rathbunfinal.Overlay;
+
+/**
+ *
+ * @author zach
+ */
+public class AssetCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Loads a file as its bytes, counting how many times it was read.
+    private int loads;
+    private final AssetCache.Loader<byte[]> bytesLoader =
+            new AssetCache.Loader<byte[]>()
+    {
+        @Override
+        public byte[] load(File file) throws IOException
+        {
+            loads++;
+            return Files.readAllBytes(file.toPath());
+        }
+
+        @Override
+        public long sizeOf(byte[] value)
+        {
+            return value.length;
+        }
+    };
+
+    public AssetCacheTest()
+    {
+    }
+
+    /**
+     * Test of get method, of class AssetCache.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testGet() throws Exception
+    {
+        AssetCache cache = new AssetCache(1000);
+        File f = folder.newFile("asset.bin");
+        Files.write(f.toPath(), new byte[10]);
+
+        byte[] first = cache.get(f, bytesLoader);
+        assertSame(first, cache.get(f, bytesLoader));
+        assertEquals(1, loads);
+
+        // A newer file is loaded again.
+        Files.write(f.toPath(), new byte[20]);
+        f.setLastModified(f.lastModified() + 5000);
+        assertEquals(20, cache.get(f, bytesLoader).length);
+        assertEquals(2, loads);
+        assertEquals(20, cache.getBytes());
+    }
+
+    /**
+     * Test that the least recently used entries are dropped.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testEviction() throws Exception
+    {
+        AssetCache cache = new AssetCache(250);
+        File[] files = new File[3];
+
+        for (int n = 0; n < files.length; n++)
+        {
+            files[n] = folder.newFile("asset" + n + ".bin");
+            Files.write(files[n].toPath(), new byte[100]);
+        }
+
+        cache.get(files[0], bytesLoader);
+        cache.get(files[1], bytesLoader);
+        cache.get(files[0], bytesLoader); // files[1] is now the oldest.
+        cache.get(files[2], bytesLoader);
+
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.getBytes());
+
+        cache.get(files[0], bytesLoader);
+        assertEquals(3, loads);
+        cache.get(files[1], bytesLoader);
+        assertEquals(4, loads);
+    }
+
+    /**
+     * Test of load method, of class Overlay.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testOverlayLoad() throws Exception
+    {
+        Overlay sticker = Overlay.load(new File("wow-sticker.png"));
+
+        assertSame(sticker, Overlay.load(new File("wow-sticker.png")));
+        assertEquals(100, sticker.getWidth());
+        assertEquals(76, sticker.getHeight());
+    }
+
+}
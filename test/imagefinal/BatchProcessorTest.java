@@ -0,0 +1,140 @@
+package imagefinal;
+
+import java.io.File;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import rathbunfinal.BatchProcessor;
+import rathbunfinal.Image;
+import rathbunfinal.ImageEncoder;
+import rathbunfinal.Pipeline;
+
+/**
+ *
+ * @author zach
+ */
+public class BatchProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public BatchProcessorTest()
+    {
+    }
+
+    /**
+     * Test of process method, of class BatchProcessor.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProcess() throws Exception
+    {
+        File in = folder.newFolder("in");
+        File out = folder.newFolder("out");
+
+        for (int n = 0; n < 3; n++)
+            Files.copy(new File("mosley-bridge.jpg").toPath(),
+                    new File(in, "photo" + n + ".jpg").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        Files.write(new File(in, "notes.txt").toPath(), new byte[] {1, 2, 3});
+
+        Pipeline pipeline = Pipeline.compile(new String[] {"grayscale"},
+                null, null);
+        BatchProcessor batch = new BatchProcessor(pipeline, out, 2);
+
+        try (DirectoryStream<Path> inputs =
+                BatchProcessor.openInputs(in.getPath()))
+        {
+            batch.process(inputs);
+        }
+
+        // The text file is not picked up as an image.
+        assertEquals(3, batch.getProcessed());
+        assertEquals(0, batch.getFailed());
+
+        Image result = new Image(new File(out, "photo1.jpg"));
+        assertEquals(830, result.getImage().getWidth());
+        assertEquals(380, result.getImage().getHeight());
+    }
+
+    /**
+     * Test of openInputs method, of class BatchProcessor.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testOpenInputs() throws Exception
+    {
+        File in = folder.newFolder("glob");
+        new File(in, "a.png").createNewFile();
+        new File(in, "b.jpg").createNewFile();
+
+        int count = 0;
+
+        try (DirectoryStream<Path> inputs =
+                BatchProcessor.openInputs(in.getPath() + "/*.png"))
+        {
+            for (Path p : inputs)
+                count++;
+        }
+
+        assertEquals(1, count);
+    }
+
+    /**
+     * Test that an image that fails with an Error gives back its permit, of
+     * class BatchProcessor.
+     * @throws java.lang.Exception
+     */
+    @Test(timeout = 60000)
+    public void testProcessError() throws Exception
+    {
+        File in = folder.newFolder("errors");
+        File out = folder.newFolder("errors-out");
+
+        for (int n = 0; n < 3; n++)
+            Files.copy(new File("mosley-bridge.jpg").toPath(),
+                    new File(in, "photo" + n + ".jpg").toPath());
+
+        Pipeline pipeline = new Pipeline().addStage(img ->
+        {
+            throw new OutOfMemoryError("too big");
+        });
+        BatchProcessor batch = new BatchProcessor(pipeline, out, 1, 1, 1);
+
+        try (DirectoryStream<Path> inputs =
+                BatchProcessor.openInputs(in.getPath()))
+        {
+            batch.process(inputs);
+        }
+
+        assertEquals(0, batch.getProcessed());
+        assertEquals(3, batch.getFailed());
+    }
+
+    /**
+     * Test that a name without an extension gets the format's, of class
+     * BatchProcessor.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProcessFileWithoutExtension() throws Exception
+    {
+        File in = folder.newFolder("bare");
+        File out = folder.newFolder("bare-out");
+        Path input = new File(in, "photo").toPath();
+
+        Files.copy(new File("mosley-bridge.jpg").toPath(), input);
+
+        BatchProcessor batch = new BatchProcessor(new Pipeline(), out, 1, 1, 1,
+                new ImageEncoder(), "png");
+
+        assertEquals(new File(out, "photo.png"), batch.processFile(input));
+        assertTrue(new File(out, "photo.png").isFile());
+    }
+
+}
@@ -0,0 +1,83 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.ColorIndex;
+import rathbunfinal.ColorMetrics;
+import rathbunfinal.Image;
+import rathbunfinal.MedianCut;
+import rathbunfinal.PaletteMap;
+import rathbunfinal.PointOperations;
+
+/**
+ *
+ * @author zach
+ */
+public class ColorIndexTest {
+
+    public ColorIndexTest()
+    {
+    }
+
+    /**
+     * Test of add and get methods, of class ColorIndex.
+     */
+    @Test
+    public void testAddAndGet()
+    {
+        ColorIndex index = new ColorIndex(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random rand = new Random(5);
+
+        // Enough colors to make the table grow a few times.
+        for (int n = 0; n < 50000; n++)
+        {
+            int rgb = rand.nextInt() & 0xFF0FFF0F;
+            index.add(rgb);
+            expected.put(rgb & 0xFFFFFF, 0);
+        }
+
+        assertEquals(expected.size(), index.size());
+
+        for (int slot = 0; slot < index.capacity(); slot++)
+            if (index.keyAt(slot) != ColorIndex.EMPTY)
+            {
+                index.setValueAt(slot, index.keyAt(slot) ^ 0x123456);
+                expected.put(index.keyAt(slot), index.keyAt(slot) ^ 0x123456);
+            }
+
+        // The alpha channel is ignored.
+        for (Map.Entry<Integer, Integer> e : expected.entrySet())
+            assertEquals((int) e.getValue(), index.get(e.getKey() | 0xFF000000));
+    }
+
+    /**
+     * Test that cartoonify through the table of colors matches the lookup
+     * table of the palette.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCartoonify() throws Exception
+    {
+        Image img1 = new Image(new File("mosley-bridge.jpg"));
+        BufferedImage b1 = img1.getImage();
+        int[] palette = MedianCut.palette(b1.getRGB(0, 0, b1.getWidth(),
+                b1.getHeight(), null, 0, b1.getWidth()), b1.getWidth(),
+                b1.getHeight(), 20);
+        img1.cartoonify(20, ColorMetrics.HSV_CONE);
+
+        Image img2 = new Image(new File("mosley-bridge.jpg"));
+        img2.applyPointOperations(PointOperations.palette(new PaletteMap(palette)));
+        BufferedImage b2 = img2.getImage();
+
+        assertArrayEquals(
+                b2.getRGB(0, 0, b2.getWidth(), b2.getHeight(), null, 0, b2.getWidth()),
+                b1.getRGB(0, 0, b1.getWidth(), b1.getHeight(), null, 0, b1.getWidth()));
+    }
+
+}
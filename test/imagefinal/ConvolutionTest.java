@@ -0,0 +1,234 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.Convolution;
+import rathbunfinal.Image;
+import rathbunfinal.ImageComparison;
+import rathbunfinal.TileScheduler;
+
+/**
+ *
+ * @author zach
+ */
+public class ConvolutionTest {
+
+    public ConvolutionTest()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        TileScheduler.setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Test of boxBlur method, of class Convolution.
+     */
+    @Test
+    public void testBoxBlur()
+    {
+        int width = 97;
+        int height = 61;
+        int[] src = noise(width, height);
+
+        for (int radius : new int[] {0, 1, 4, 70})
+        {
+            int[] dst = new int[src.length];
+
+            Convolution.boxBlur(src, dst, width, height, radius);
+
+            // Each pass rounds, so the result is within 1 of the exact average.
+            double[] weights = new double[2 * radius + 1];
+            Arrays.fill(weights, 1.0 / weights.length);
+
+            ImageComparison result = ImageComparison.compare(
+                    imageOf(reference(src, width, height, weights), width, height),
+                    imageOf(dst, width, height));
+
+            assertTrue("radius " + radius + ": " + result, result.getMaxDelta() <= 1);
+        }
+    }
+
+    /**
+     * Test of gaussianBlur method, of class Convolution.
+     */
+    @Test
+    public void testGaussianBlur()
+    {
+        int width = 120;
+        int height = 90;
+        int[] src = noise(width, height);
+        int[] serial = new int[src.length];
+        int[] parallel = new int[src.length];
+
+        TileScheduler.setParallelism(1);
+        Convolution.gaussianBlur(src, serial, width, height, 1.5);
+        TileScheduler.setParallelism(4);
+        Convolution.gaussianBlur(src, parallel, width, height, 1.5);
+
+        // The halos make the bands independent.
+        assertArrayEquals(serial, parallel);
+
+        double[] weights = new double[2 * 5 + 1];
+        double total = 0;
+
+        for (int k = 0; k < weights.length; k++)
+            total += weights[k] = Math.exp(-(k - 5) * (k - 5) / (2 * 1.5 * 1.5));
+        for (int k = 0; k < weights.length; k++)
+            weights[k] /= total;
+
+        ImageComparison result = ImageComparison.compare(
+                imageOf(reference(src, width, height, weights), width, height),
+                imageOf(serial, width, height));
+
+        assertTrue(result.toString(), result.getMaxDelta() <= 1);
+    }
+
+    /**
+     * Test of sharpen method, of class Convolution.
+     */
+    @Test
+    public void testSharpen()
+    {
+        int[] flat = new int[50 * 40];
+        int[] dst = new int[flat.length];
+
+        Arrays.fill(flat, 0xFF336699);
+
+        // A flat image has nothing to sharpen.
+        Convolution.sharpen(flat, dst, 50, 40, 1.0, 1.0);
+        assertArrayEquals(flat, dst);
+
+        // Sharpening with no amount changes nothing.
+        int[] src = noise(50, 40);
+        Convolution.sharpen(src, dst, 50, 40, 1.0, 0.0);
+        assertArrayEquals(src, dst);
+    }
+
+    /**
+     * Test of sobel method, of class Convolution.
+     */
+    @Test
+    public void testSobel()
+    {
+        int width = 40;
+        int height = 30;
+        int[] src = new int[width * height];
+        int[] magnitude = new int[src.length];
+
+        // Black on the left, white on the right.
+        for (int p = 0; p < src.length; p++)
+            src[p] = (p % width < 20) ? 0xFF000000 : 0xFFFFFFFF;
+
+        Convolution.sobel(src, magnitude, width, height);
+
+        for (int j = 0; j < height; j++)
+            for (int i = 0; i < width; i++)
+            {
+                int m = magnitude[j * width + i];
+
+                if (i == 19 || i == 20)
+                    assertEquals(255, m);
+                else
+                    assertEquals(0, m);
+            }
+    }
+
+    /**
+     * Test of outline method, of class Image.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testOutline() throws Exception
+    {
+        Image plain = new Image(new File("mosley-bridge.jpg"));
+        Image outlined = new Image(new File("mosley-bridge.jpg"));
+
+        plain.cartoonify();
+        outlined.outline(48, Image::cartoonify);
+
+        BufferedImage i1 = plain.getImage();
+        BufferedImage i2 = outlined.getImage();
+        int changed = 0;
+
+        // Every pixel is either the cartoon's or black.
+        for (int i = 0; i < i1.getWidth(); i++)
+            for (int j = 0; j < i1.getHeight(); j++)
+                if (i1.getRGB(i, j) != i2.getRGB(i, j))
+                {
+                    assertEquals(0xFF000000, i2.getRGB(i, j));
+                    changed++;
+                }
+
+        assertTrue(changed > 0);
+    }
+
+    /**
+     * Makes random opaque pixels.
+     */
+    private static int[] noise(int width, int height)
+    {
+        Random random = new Random(7);
+        int[] pixels = new int[width * height];
+
+        for (int p = 0; p < pixels.length; p++)
+            pixels[p] = 0xFF000000 | random.nextInt(0x1000000);
+
+        return pixels;
+    }
+
+    /**
+     * Filters the pixels the slow way, with a full 2D kernel in doubles.
+     */
+    private static int[] reference(int[] src, int width, int height, double[] weights)
+    {
+        int radius = weights.length / 2;
+        int[] dst = new int[src.length];
+
+        for (int j = 0; j < height; j++)
+            for (int i = 0; i < width; i++)
+            {
+                double[] sum = new double[4];
+
+                for (int dy = -radius; dy <= radius; dy++)
+                    for (int dx = -radius; dx <= radius; dx++)
+                    {
+                        int y = Math.max(0, Math.min(height - 1, j + dy));
+                        int x = Math.max(0, Math.min(width - 1, i + dx));
+                        int p = src[y * width + x];
+                        double w = weights[dy + radius] * weights[dx + radius];
+
+                        for (int c = 0; c < 4; c++)
+                            sum[c] += w * ((p >>> (8 * c)) & 0xFF);
+                    }
+
+                int pixel = 0;
+
+                for (int c = 0; c < 4; c++)
+                    pixel |= (int) Math.round(sum[c]) << (8 * c);
+
+                dst[j * width + i] = pixel;
+            }
+
+        return dst;
+    }
+
+    /**
+     * Wraps pixels in an image.
+     */
+    private static BufferedImage imageOf(int[] pixels, int width, int height)
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+
+}
@@ -0,0 +1,135 @@
+package imagefinal;
+
+import java.io.File;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.ColorMetrics;
+import rathbunfinal.Dither;
+import rathbunfinal.Image;
+import rathbunfinal.Options;
+import rathbunfinal.PaletteMap;
+import rathbunfinal.Pipeline;
+import rathbunfinal.TileScheduler;
+
+/**
+ *
+ * @author zach
+ */
+public class DitherTest {
+
+    public DitherTest()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        TileScheduler.setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Test of forName method, of class Dither.
+     */
+    @Test
+    public void testForName()
+    {
+        assertSame(Dither.NONE, Dither.forName("none"));
+        assertSame(Dither.ORDERED, Dither.forName("Bayer"));
+        assertSame(Dither.FLOYD_STEINBERG, Dither.forName("fs"));
+    }
+
+    /**
+     * Test that dithering a gradient with black and white keeps its
+     * brightness, of class Dither.
+     */
+    @Test
+    public void testGradient()
+    {
+        PaletteMap blackAndWhite = new PaletteMap(new int[] {0x000000, 0xFFFFFF});
+
+        for (Dither dither : new Dither[] {Dither.ORDERED, Dither.FLOYD_STEINBERG})
+        {
+            int[] pixels = gradient(256, 64);
+
+            dither.apply(pixels, 256, 64, blackAndWhite);
+
+            // Each group of 16 columns averages out to about its gray.
+            for (int start = 0; start < 256; start += 16)
+            {
+                long sum = 0;
+
+                for (int j = 0; j < 64; j++)
+                    for (int i = start; i < start + 16; i++)
+                    {
+                        int p = pixels[j * 256 + i];
+
+                        assertTrue(p == 0x000000 || p == 0xFFFFFF);
+                        sum += p & 0xFF;
+                    }
+
+                assertEquals(dither + " columns from " + start, start + 7.5,
+                        sum / (64.0 * 16), 8);
+            }
+        }
+    }
+
+    /**
+     * Test that the wavefront gives the same image as one row at a time, of
+     * class Dither.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testParallel() throws Exception
+    {
+        for (Dither dither : new Dither[] {Dither.ORDERED, Dither.FLOYD_STEINBERG})
+        {
+            Image img1 = new Image(new File("mosley-bridge.jpg"));
+            Image img2 = new Image(new File("mosley-bridge.jpg"));
+
+            TileScheduler.setParallelism(1);
+            img1.cartoonify(ColorMetrics.HSV_CONE, dither);
+            TileScheduler.setParallelism(4);
+            img2.cartoonify(ColorMetrics.HSV_CONE, dither);
+
+            assertArrayEquals(dither.toString(), pixelsOf(img1), pixelsOf(img2));
+        }
+    }
+
+    /**
+     * Test that --dither makes cartoonify a stage, of class Pipeline.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testPipeline() throws Exception
+    {
+        Options options = Options.parse(new String[] {"--dither=fs", "cartoonify"});
+
+        assertNull(Pipeline.pointOperation("cartoonify", options));
+        assertEquals(1, Pipeline.compile(options, null, null).getStageCount());
+    }
+
+    /**
+     * Makes a gray gradient, black on the left and white on the right.
+     */
+    private static int[] gradient(int width, int height)
+    {
+        int[] pixels = new int[width * height];
+
+        for (int j = 0; j < height; j++)
+            for (int i = 0; i < width; i++)
+                pixels[j * width + i] = i * 0x010101;
+
+        return pixels;
+    }
+
+    /**
+     * Returns the pixels of an image.
+     */
+    private static int[] pixelsOf(Image img)
+    {
+        return img.getImage().getRGB(0, 0, img.getImage().getWidth(),
+                img.getImage().getHeight(), null, 0, img.getImage().getWidth());
+    }
+
+}
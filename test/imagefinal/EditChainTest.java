@@ -0,0 +1,98 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.EditChain;
+import rathbunfinal.Image;
+import rathbunfinal.Pipeline;
+import rathbunfinal.PointOperations;
+
+/**
+ *
+ * @author zach
+ */
+public class EditChainTest {
+
+    public EditChainTest()
+    {
+    }
+
+    /**
+     * Test that only the changed operations are rerun, of class EditChain.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRender() throws Exception
+    {
+        EditChain chain = new EditChain(new Image(new File("mosley-bridge.jpg")));
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+
+        chain.add("first", img -> first.incrementAndGet(), img -> { });
+        chain.add("grayscale", PointOperations.GRAYSCALE);
+        chain.add("second", img -> second.incrementAndGet(), img -> { });
+
+        Image result = chain.render(() -> false);
+        assertEquals(1, first.get());
+        assertEquals(1, second.get());
+
+        // Nothing has changed, so nothing is rerun.
+        assertSame(result, chain.render(() -> false));
+
+        // Switching off the middle operation only reruns the ones after it.
+        chain.setEnabled(1, false);
+        chain.render(() -> false);
+        assertEquals(1, first.get());
+        assertEquals(2, second.get());
+
+        // Moving the last operation to the front reruns all of them.
+        chain.move(2, 0);
+        chain.render(() -> false);
+        assertEquals(2, first.get());
+        assertEquals(3, second.get());
+
+        // A cancelled render stops before running anything.
+        chain.remove(0);
+        assertNull(chain.render(() -> true));
+        assertEquals(2, first.get());
+        assertEquals(2, chain.size());
+    }
+
+    /**
+     * Test of renderFull method, of class EditChain.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRenderFull() throws Exception
+    {
+        Image proxy = new Image(new File("mosley-bridge.jpg"));
+        Image full = new Image(new File("mosley-bridge.jpg"));
+        Image expected = new Image(new File("mosley-bridge.jpg"));
+        EditChain chain = new EditChain(proxy);
+
+        chain.add("grayscale", PointOperations.GRAYSCALE);
+        chain.add("negative", PointOperations.NEGATIVE);
+        chain.setEnabled(0, false);
+
+        new Pipeline().addPointOperation(PointOperations.NEGATIVE).run(expected);
+        chain.renderFull(full);
+
+        BufferedImage i1 = expected.getImage();
+        BufferedImage i2 = full.getImage();
+        BufferedImage i3 = chain.render(() -> false).getImage();
+
+        for (int i = 0; i < i1.getWidth(); i++)
+            for (int j = 0; j < i1.getHeight(); j++)
+            {
+                assertEquals(i1.getRGB(i, j), i2.getRGB(i, j));
+                assertEquals(i1.getRGB(i, j), i3.getRGB(i, j));
+            }
+
+        // The proxy itself is never changed.
+        assertNotEquals(i1.getRGB(0, 0), proxy.getImage().getRGB(0, 0));
+    }
+
+}
@@ -0,0 +1,63 @@
+package imagefinal;
+
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import rathbunfinal.HeadlessLauncher;
+import rathbunfinal.Image;
+import rathbunfinal.ImageComparison;
+import rathbunfinal.ImageFinal;
+import rathbunfinal.Options;
+
+/**
+ *
+ * @author zach
+ */
+public class HeadlessLauncherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public HeadlessLauncherTest()
+    {
+    }
+
+    /**
+     * Test of accepts method, of class HeadlessLauncher.
+     */
+    @Test
+    public void testAccepts()
+    {
+        assertTrue(HeadlessLauncher.accepts(Options.parse(new String[] {"--serve"})));
+        assertTrue(HeadlessLauncher.accepts(Options.parse(
+                new String[] {"--input=a.jpg", "--output=b.png", "grayscale"})));
+
+        // Without an output the image is shown on the screen.
+        assertFalse(HeadlessLauncher.accepts(Options.parse(
+                new String[] {"--input=a.jpg", "grayscale"})));
+        assertFalse(HeadlessLauncher.accepts(Options.parse(new String[] {"grayscale"})));
+    }
+
+    /**
+     * Test of processFile method, of class HeadlessLauncher.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProcessFile() throws Exception
+    {
+        File output = new File(folder.getRoot(), "result.png");
+
+        assertEquals(0, HeadlessLauncher.processFile(Options.parse(new String[]
+                {"--input=mosley-bridge.jpg", "--output=" + output, "grayscale",
+                    "negative"})));
+
+        Image expected = new Image(new File("mosley-bridge.jpg"));
+        ImageFinal.processOperations(expected, new String[] {"grayscale", "negative"});
+
+        assertTrue(ImageComparison.compare(expected.getImage(),
+                new Image(output).getImage()).isIdentical());
+    }
+
+}
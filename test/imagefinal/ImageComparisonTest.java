@@ -0,0 +1,127 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.Image;
+import rathbunfinal.ImageComparison;
+import rathbunfinal.TileScheduler;
+
+/**
+ *
+ * @author zach
+ */
+public class ImageComparisonTest {
+
+    public ImageComparisonTest()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        TileScheduler.setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Test of comparing an image with itself, of class ImageComparison.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testIdentical() throws Exception
+    {
+        BufferedImage img = new Image(new File("mosley-bridge.jpg")).getImage();
+        ImageComparison result = ImageComparison.compare(img, new Image(img).getImage());
+
+        assertTrue(result.isIdentical());
+        assertEquals(0, result.getMismatches());
+        assertEquals(Double.POSITIVE_INFINITY, result.getPsnr(), 0);
+        assertEquals(1.0, result.getSsim(), 0);
+    }
+
+    /**
+     * Test of compare method with subimages, of class ImageComparison.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testSubimage() throws Exception
+    {
+        BufferedImage img = new Image(new File("mosley-bridge.jpg")).getImage();
+        BufferedImage part = img.getSubimage(100, 50, 200, 120);
+        BufferedImage copy = new BufferedImage(200, 120, BufferedImage.TYPE_INT_RGB);
+
+        copy.getGraphics().drawImage(part, 0, 0, null);
+
+        assertTrue(ImageComparison.compare(part, copy).isIdentical());
+        assertFalse(ImageComparison.compare(img.getSubimage(0, 0, 200, 120),
+                copy).isIdentical());
+    }
+
+    /**
+     * Test of compare method with a tolerance, of class ImageComparison.
+     */
+    @Test
+    public void testCompare()
+    {
+        BufferedImage img1 = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        BufferedImage img2 = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+
+        img2.setRGB(3, 4, 0x030000);
+        img2.setRGB(5, 6, 0x000001);
+
+        ImageComparison exact = ImageComparison.compare(img1, img2);
+        assertFalse(exact.isIdentical());
+        assertEquals(3, exact.getMaxDelta());
+        assertEquals(2, exact.getMismatches());
+        assertEquals(10.0 / 300, exact.getMeanSquaredError(), 1e-12);
+        assertEquals(10 * Math.log10(255.0 * 255.0 * 30), exact.getPsnr(), 1e-9);
+
+        ImageComparison close = ImageComparison.compare(img1, img2, 1);
+        assertEquals(1, close.getMismatches());
+        assertEquals(0, ImageComparison.compare(img1, img2, 3).getMismatches());
+        assertTrue(ImageComparison.compare(img1, img2, 3).isWithin(40, 0.9));
+        assertFalse(close.isWithin(40, 0.9));
+    }
+
+    /**
+     * Test of getSsim method, of class ImageComparison.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testSsim() throws Exception
+    {
+        Image original = new Image(new File("mosley-bridge.jpg"));
+        Image negative = new Image(new File("mosley-bridge.jpg"));
+
+        negative.negativeImage();
+
+        TileScheduler.setParallelism(1);
+        ImageComparison serial = ImageComparison.compare(original.getImage(),
+                negative.getImage());
+        TileScheduler.setParallelism(4);
+        ImageComparison parallel = ImageComparison.compare(original.getImage(),
+                negative.getImage());
+
+        // A negative keeps the edges but not the brightness.
+        assertTrue(serial.getSsim() < 0.5);
+        assertEquals(255, serial.getMaxDelta());
+
+        // The bands do not change the result.
+        assertEquals(serial.getSsim(), parallel.getSsim(), 0);
+        assertEquals(serial.getPsnr(), parallel.getPsnr(), 0);
+        assertEquals(serial.getMismatches(), parallel.getMismatches());
+    }
+
+    /**
+     * Test that images of different sizes are not compared.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentSizes()
+    {
+        ImageComparison.compare(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB),
+                new BufferedImage(10, 11, BufferedImage.TYPE_INT_RGB));
+    }
+
+}
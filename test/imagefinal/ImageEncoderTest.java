@@ -0,0 +1,79 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import rathbunfinal.Image;
+import rathbunfinal.ImageEncoder;
+
+/**
+ *
+ * @author zach
+ */
+public class ImageEncoderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public ImageEncoderTest()
+    {
+    }
+
+    /**
+     * Test of write method, of class ImageEncoder.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWrite() throws Exception
+    {
+        BufferedImage img = new Image(new File("mosley-bridge.jpg")).getImage();
+        ImageEncoder low = new ImageEncoder(0.1f, -1, false);
+        ImageEncoder high = new ImageEncoder(0.9f, -1, true);
+
+        // The same writer is used for both files, and a lower quality makes
+        // a smaller file.
+        ImageEncoder.Result small = low.write(img, folder.newFile("low.jpeg"));
+        low.write(img, folder.newFile("again.jpg"));
+        ImageEncoder.Result large = high.write(img, folder.newFile("high.jpg"));
+        low.close();
+        high.close();
+
+        assertEquals("jpg", small.getFormat());
+        assertTrue(small.getBytes() < large.getBytes());
+        assertTrue(small.getNanos() > 0);
+
+        // PNG keeps every pixel.
+        File png = folder.newFile("lossless.png");
+        ImageEncoder.Result result = new ImageEncoder(-1, 1, false).write(img, png);
+        assertEquals(png.length(), result.getBytes());
+        assertArrayEquals(rgbOf(img), rgbOf(ImageIO.read(png)));
+    }
+
+    /**
+     * Test that JPEG drops the alpha channel, of class ImageEncoder.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWriteAlpha() throws Exception
+    {
+        BufferedImage sticker = new Image(new File("wow-sticker.png")).getImage();
+        File jpg = folder.newFile("sticker.jpg");
+
+        assertTrue(sticker.getColorModel().hasAlpha());
+        new ImageEncoder().write(sticker, jpg);
+
+        BufferedImage read = ImageIO.read(jpg);
+        assertFalse(read.getColorModel().hasAlpha());
+        assertEquals(sticker.getWidth(), read.getWidth());
+    }
+
+    private static int[] rgbOf(BufferedImage img)
+    {
+        return img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+    }
+
+}
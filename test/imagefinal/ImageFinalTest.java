@@ -32,6 +32,11 @@ public class ImageFinalTest {
 	String[] misspelledOperations = {"grysale", "addfme", "addscker", "cartoony"};
 	
 	assertFalse("falseTest(no arguments)", ImageFinal.validOperations(misspelledOperations));
+	
+	String[] longChain = {"grayscale", "negative", "cartoonify", "blur", "sharpen", 
+		"edges"};
+	
+	assertTrue("longChainTest", ImageFinal.validOperations(longChain));
     }
 
 }
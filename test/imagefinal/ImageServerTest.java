@@ -0,0 +1,190 @@
+package imagefinal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.Image;
+import rathbunfinal.ImageComparison;
+import rathbunfinal.ImageEncoder;
+import rathbunfinal.ImageFinal;
+import rathbunfinal.ImageServer;
+import rathbunfinal.TileScheduler;
+
+/**
+ *
+ * @author zach
+ */
+public class ImageServerTest {
+
+    private ImageServer server;
+
+    public ImageServerTest()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (server != null)
+            server.stop();
+
+        TileScheduler.setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Test of processing images posted at the same time, of class
+     * ImageServer.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProcess() throws Exception
+    {
+        server = new ImageServer(0, 2, 256L * 1024 * 1024, new ImageEncoder(), null, null);
+        server.start();
+
+        byte[] photo = Files.readAllBytes(new File("mosley-bridge.jpg").toPath());
+        Image expected = new Image(new File("mosley-bridge.jpg"));
+        ImageFinal.processOperations(expected, new String[] {"grayscale", "negative"});
+
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        List<Future<HttpURLConnection>> responses = new ArrayList<>();
+
+        try
+        {
+            for (int n = 0; n < 4; n++)
+                responses.add(clients.submit(() ->
+                        post("?ops=grayscale,negative&format=png", photo)));
+
+            for (Future<HttpURLConnection> response : responses)
+            {
+                HttpURLConnection connection = response.get();
+
+                assertEquals(200, connection.getResponseCode());
+                assertEquals("image/png", connection.getContentType());
+
+                try (InputStream in = connection.getInputStream())
+                {
+                    // PNG is lossless, so the result is what was sent.
+                    assertTrue(ImageComparison.compare(expected.getImage(),
+                            ImageIO.read(in)).isIdentical());
+                }
+            }
+        } finally
+        {
+            clients.shutdownNow();
+        }
+
+        assertEquals(4, server.getServed());
+        assertEquals(0, server.getRejected());
+    }
+
+    /**
+     * Test of the requests that are turned away, of class ImageServer.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testBadRequests() throws Exception
+    {
+        // 830 x 380 pixels need more than a megabyte.
+        server = new ImageServer(0, 1, 1024 * 1024, new ImageEncoder(), null, null);
+        server.start();
+
+        byte[] photo = Files.readAllBytes(new File("mosley-bridge.jpg").toPath());
+
+        assertEquals(400, post("?ops=sepia", photo).getResponseCode());
+        assertEquals(400, post("?ops=negative&palette=secrets.txt", photo).getResponseCode());
+        assertEquals(400, post("?ops=negative&format=xyz", photo).getResponseCode());
+        assertEquals(400, post("?ops=blur&box=100000", photo).getResponseCode());
+        assertEquals(400, post("?ops=sharpen&sigma=1e9", photo).getResponseCode());
+        assertEquals(415, post("?ops=negative", new byte[] {1, 2, 3}).getResponseCode());
+        assertEquals(413, post("?ops=negative", photo).getResponseCode());
+
+        HttpURLConnection get = (HttpURLConnection) url("?ops=negative").openConnection();
+        assertEquals(405, get.getResponseCode());
+
+        assertEquals(0, server.getServed());
+    }
+
+    /**
+     * Test of the memory reserved for request bodies, of class ImageServer.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testBodyMemory() throws Exception
+    {
+        // 64 workers share 16 MB, so a body with no length can use 256 KB.
+        server = new ImageServer(0, 64, 16 * 1024 * 1024, new ImageEncoder(), null, null);
+        server.start();
+
+        byte[] photo = Files.readAllBytes(new File("mosley-bridge.jpg").toPath());
+
+        assertEquals(200, postChunked("?ops=negative", photo).getResponseCode());
+        assertEquals(413, postChunked("?ops=negative", new byte[300 * 1024]).getResponseCode());
+        assertEquals(413, post("?ops=negative", new byte[17 * 1024 * 1024]).getResponseCode());
+    }
+
+    /**
+     * Returns the address of the server with a query.
+     */
+    private URL url(String query) throws Exception
+    {
+        return new URL("http://localhost:" + server.getPort() + ImageServer.PATH + query);
+    }
+
+    /**
+     * Posts an image to the server.
+     */
+    private HttpURLConnection post(String query, byte[] body) throws Exception
+    {
+        HttpURLConnection connection = (HttpURLConnection) url(query).openConnection();
+
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+
+        try (OutputStream out = connection.getOutputStream())
+        {
+            out.write(body);
+        }
+
+        connection.getResponseCode();
+        return connection;
+    }
+
+    /**
+     * Posts an image to the server without saying how long it is.
+     */
+    private HttpURLConnection postChunked(String query, byte[] body) throws Exception
+    {
+        HttpURLConnection connection = (HttpURLConnection) url(query).openConnection();
+
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(8192);
+
+        try (OutputStream out = connection.getOutputStream())
+        {
+            out.write(body);
+        } catch (IOException ex)
+        {
+            // The server may answer before the whole body is sent.
+        }
+
+        connection.getResponseCode();
+        return connection;
+    }
+
+}
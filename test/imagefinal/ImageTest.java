@@ -6,12 +6,15 @@
 package imagefinal;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import javax.imageio.ImageIO;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import rathbunfinal.Image;
+import rathbunfinal.ImageComparison;
 
 /**
  *
@@ -94,12 +97,15 @@ public class ImageTest {
     {
         BufferedImage i1;
         BufferedImage i2;
+        ByteArrayOutputStream jpg = new ByteArrayOutputStream();
         
-        // Save the image and then reload it, this way the colors are 
+        // Encode the image and then decode it, this way the colors are 
         // correct. This is because JPG introduces compression and 
-        // some color channel values will change.
-        ImageIO.write(img1.getImage(), "jpg", new File("tmp.jpg"));
-        i1 = new Image(new File("tmp.jpg")).getImage();
+        // some color channel values will change. It is done in memory so 
+        // nothing is written to disk.
+        ImageIO.write(img1.getImage(), "jpg", jpg);
+        i1 = new Image(ImageIO.read(
+                new ByteArrayInputStream(jpg.toByteArray()))).getImage();
         
         // Get the image from img2.
         i2 = img2.getImage();
@@ -109,14 +115,8 @@ public class ImageTest {
             i1.getHeight() != i2.getHeight())
             return false;
         
-        // Walk through the image and make sure the images are equal.
-        for (int i = 0; i < i1.getWidth(); i++)
-            for (int j = 0; j < i1.getHeight(); j++)
-                if (i1.getRGB(i, j) != i2.getRGB(i, j))
-                    return false;
-        
-        // At this point every pixel mathches, return true.
-        return true;
+        // Every pixel has to match exactly.
+        return ImageComparison.compare(i2, i1).isIdentical();
     }
     
 }
@@ -0,0 +1,84 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.ColorMetrics;
+import rathbunfinal.Image;
+import rathbunfinal.MedianCut;
+import rathbunfinal.TileScheduler;
+
+/**
+ *
+ * @author zach
+ */
+public class MedianCutTest {
+
+    public MedianCutTest()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        TileScheduler.setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Test of palette method, of class MedianCut.
+     */
+    @Test
+    public void testPalette()
+    {
+        int[] colors = {0x102030, 0xF0E0D0, 0x80FF00};
+        int[] pixels = new int[300 * 200];
+
+        for (int p = 0; p < pixels.length; p++)
+            pixels[p] = 0xFF000000 | colors[p % 7 % 3];
+
+        // An image with three colors gives back exactly those colors.
+        int[] palette = MedianCut.palette(pixels, 300, 200, 8);
+        int[] expected = colors.clone();
+
+        Arrays.sort(palette);
+        Arrays.sort(expected);
+        assertArrayEquals(expected, palette);
+
+        // Random pixels fill the whole palette.
+        Random rand = new Random(3);
+        for (int p = 0; p < pixels.length; p++)
+            pixels[p] = rand.nextInt();
+
+        assertEquals(16, MedianCut.palette(pixels, 300, 200, 16).length);
+    }
+
+    /**
+     * Test that the adaptive cartoonify does not depend on the number of
+     * threads.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDeterministic() throws Exception
+    {
+        TileScheduler.setParallelism(1);
+        Image img1 = new Image(new File("mosley-bridge.jpg"));
+        img1.cartoonify(12, ColorMetrics.HSV_CONE);
+
+        TileScheduler.setParallelism(4);
+        Image img2 = new Image(new File("mosley-bridge.jpg"));
+        img2.cartoonify(12, ColorMetrics.HSV_CONE);
+
+        BufferedImage b1 = img1.getImage();
+        BufferedImage b2 = img2.getImage();
+        int[] rgb1 = b1.getRGB(0, 0, b1.getWidth(), b1.getHeight(), null, 0, b1.getWidth());
+        int[] rgb2 = b2.getRGB(0, 0, b2.getWidth(), b2.getHeight(), null, 0, b2.getWidth());
+
+        assertArrayEquals(rgb1, rgb2);
+        assertTrue(Arrays.stream(rgb1).distinct().count() <= 12);
+    }
+
+}
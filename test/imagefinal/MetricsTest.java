@@ -0,0 +1,86 @@
+package imagefinal;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import rathbunfinal.Image;
+import rathbunfinal.Metrics;
+import rathbunfinal.OperationStats;
+import rathbunfinal.Options;
+import rathbunfinal.Pipeline;
+
+/**
+ *
+ * @author zach
+ */
+public class MetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public MetricsTest()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    /**
+     * Test that nothing is timed while metrics are off, of class Metrics.
+     */
+    @Test
+    public void testDisabled()
+    {
+        Metrics.setEnabled(false);
+
+        assertNull(Metrics.start("disabled"));
+        Metrics.stop(null, 100);
+        assertNull(Metrics.get("disabled"));
+    }
+
+    /**
+     * Test that a pipeline run is timed stage by stage, of class Metrics.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testPipeline() throws Exception
+    {
+        Metrics.setEnabled(true);
+        Metrics.reset();
+
+        Image img = new Image(new File("mosley-bridge.jpg"));
+        Pipeline.compile(Options.parse(new String[] {"grayscale", "negative"}),
+                null, null).run(img);
+
+        OperationStats decode = Metrics.get("decode");
+        OperationStats fused = Metrics.get("grayscale+negative");
+
+        assertEquals(1, decode.getCount());
+        assertEquals(830L * 380, fused.getPixels());
+        assertTrue(fused.getTotalMillis() > 0);
+        assertTrue(fused.getPixelsPerSecond() > 0);
+        assertTrue(decode.getAllocatedBytes() > 4L * 830 * 380);
+
+        // The timings are published over JMX.
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("rathbunfinal:type=Operation,name="
+                        + ObjectName.quote("grayscale+negative")), "Count"));
+
+        File report = folder.newFile("report.json");
+        Metrics.writeReport(report);
+        String json = new String(Files.readAllBytes(report.toPath()), "UTF-8");
+
+        assertTrue(json.contains("\"name\": \"grayscale+negative\", \"count\": 1,"));
+    }
+
+}
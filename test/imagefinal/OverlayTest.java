@@ -0,0 +1,73 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import rathbunfinal.Image;
+import rathbunfinal.Overlay;
+
+/**
+ *
+ * @author zach
+ */
+public class OverlayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public OverlayTest()
+    {
+    }
+
+    /**
+     * Test of getVisiblePixels method, of class Overlay.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testGetVisiblePixels() throws Exception
+    {
+        BufferedImage sticker = ImageIO.read(new File("wow-sticker.png"));
+        int visible = 0;
+
+        for (int i = 0; i < sticker.getWidth(); i++)
+            for (int j = 0; j < sticker.getHeight(); j++)
+                if ((sticker.getRGB(i, j) >>> 24) != 0)
+                    visible++;
+
+        assertEquals(visible, new Overlay(sticker).getVisiblePixels());
+    }
+
+    /**
+     * Test of addSticker method with blending, of class Image.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testBlend() throws Exception
+    {
+        // A sticker with a half transparent red pixel, an opaque green pixel
+        // and a fully transparent pixel.
+        BufferedImage sticker = new BufferedImage(3, 1, BufferedImage.TYPE_INT_ARGB);
+        sticker.setRGB(0, 0, 0x80FF0000);
+        sticker.setRGB(1, 0, 0xFF00FF00);
+        sticker.setRGB(2, 0, 0x00FFFFFF);
+
+        File stickerFile = folder.newFile("sticker.png");
+        ImageIO.write(sticker, "png", stickerFile);
+
+        Image copied = new Image(new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB));
+        Image blended = new Image(new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB));
+
+        assertTrue(copied.addSticker(stickerFile, false));
+        assertTrue(blended.addSticker(stickerFile, true));
+
+        assertEquals(0xFFFF0000, copied.getImage().getRGB(0, 0));
+        assertEquals(0xFF800000, blended.getImage().getRGB(0, 0));
+        assertEquals(0xFF00FF00, blended.getImage().getRGB(1, 0));
+        assertEquals(0xFF000000, blended.getImage().getRGB(2, 0));
+    }
+
+}
@@ -0,0 +1,169 @@
+package imagefinal;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import rathbunfinal.ColorMetric;
+import rathbunfinal.ColorMetrics;
+import rathbunfinal.PaletteMap;
+import rathbunfinal.PixelColor;
+
+/**
+ *
+ * @author zach
+ */
+public class PaletteMapTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public PaletteMapTest()
+    {
+    }
+
+    /**
+     * Test of nearestIndex method, of class PaletteMap.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testNearestIndex() throws Exception
+    {
+        int[] palette = PixelColor.getPalette();
+        PaletteMap map = PaletteMap.forPalette(palette);
+        Random rand = new Random(42);
+
+        // The lookup table must agree with a linear scan of the palette.
+        for (int n = 0; n < 20000; n++)
+        {
+            int rgb = rand.nextInt();
+            int best = 0;
+
+            for (int k = 0; k < palette.length; k++)
+                if (PixelColor.colorDistance(rgb, palette[k]) <
+                        PixelColor.colorDistance(rgb, palette[best]))
+                    best = k;
+
+            assertEquals(best, map.nearestIndex(rgb));
+            assertEquals(palette[best], map.nearestColor(rgb));
+        }
+    }
+
+    /**
+     * Test of forPalette method, of class PaletteMap.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testForPalette() throws Exception
+    {
+        PaletteMap map1 = PaletteMap.forPalette(PixelColor.getPalette());
+        PaletteMap map2 = PaletteMap.forPalette(PixelColor.getPalette());
+
+        assertSame(map1, map2);
+        assertNotSame(map1, PaletteMap.forPalette(new int[] {0, 0xFFFFFF}));
+    }
+
+    /**
+     * Test of nearestIndex method with the CIELAB metric, of class PaletteMap.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testNearestIndexLab() throws Exception
+    {
+        int[] palette = PixelColor.getPalette();
+        ColorMetric lab = ColorMetrics.forName("lab");
+        PaletteMap map = PaletteMap.forPalette(palette, lab);
+        Random rand = new Random(7);
+        double[] p = new double[3];
+        double[] q = new double[3];
+
+        assertNotSame(map, PaletteMap.forPalette(palette));
+        assertSame(map, PaletteMap.forPalette(palette, lab));
+
+        // The closest color must agree with a scan by delta E.
+        for (int n = 0; n < 20000; n++)
+        {
+            int rgb = rand.nextInt();
+            int best = 0;
+            double bestDistance = Double.MAX_VALUE;
+
+            lab.toCoordinates(rgb, p);
+
+            for (int k = 0; k < palette.length; k++)
+            {
+                lab.toCoordinates(palette[k], q);
+                double d = Math.sqrt((p[0] - q[0]) * (p[0] - q[0])
+                        + (p[1] - q[1]) * (p[1] - q[1])
+                        + (q[2] - p[2]) * (q[2] - p[2]));
+
+                if (d < bestDistance)
+                {
+                    best = k;
+                    bestDistance = d;
+                }
+            }
+
+            assertEquals(best, map.nearestIndex(rgb));
+        }
+
+        // White is as light as it gets.
+        lab.toCoordinates(0xFFFFFF, p);
+        assertEquals(100.0, p[0], 1e-2);
+        assertEquals(0.0, p[1], 1e-2);
+    }
+
+    /**
+     * Test of nearestIndex method with a palette big enough for the k-d tree,
+     * of class PaletteMap.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testNearestIndexLargePalette() throws Exception
+    {
+        Random rand = new Random(11);
+        int[] palette = new int[4096];
+
+        // Repeated colors and a run of grays make plenty of exact ties.
+        for (int k = 0; k < palette.length; k++)
+            if (k % 8 == 0)
+                palette[k] = palette[rand.nextInt(k + 1)];
+            else if (k % 8 == 1)
+                palette[k] = (k & 0xFF) * 0x010101;
+            else
+                palette[k] = rand.nextInt() & 0xFFFFFF;
+
+        PaletteMap map = new PaletteMap(palette);
+
+        for (int n = 0; n < 2000; n++)
+        {
+            int rgb = (n < 256) ? n * 0x010101 : rand.nextInt();
+            int best = 0;
+
+            for (int k = 0; k < palette.length; k++)
+                if (PixelColor.colorDistance(rgb, palette[k]) <
+                        PixelColor.colorDistance(rgb, palette[best]))
+                    best = k;
+
+            assertEquals(best, map.nearestIndex(rgb));
+        }
+    }
+
+    /**
+     * Test that a palette file with no colors is refused, of class
+     * PixelColor.
+     * @throws java.lang.Exception
+     */
+    @Test(expected = UncheckedIOException.class)
+    public void testEmptyPalette() throws Exception
+    {
+        File f = folder.newFile("empty.txt");
+        Files.write(f.toPath(), "\n\n".getBytes());
+
+        PixelColor.getPalette(f);
+    }
+
+}
@@ -0,0 +1,70 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.Image;
+import rathbunfinal.PaletteMap;
+import rathbunfinal.Pipeline;
+import rathbunfinal.PixelColor;
+import rathbunfinal.PointOperations;
+
+/**
+ *
+ * @author zach
+ */
+public class PipelineTest {
+
+    public PipelineTest()
+    {
+    }
+
+    /**
+     * Test of addPointOperation method, of class Pipeline.
+     */
+    @Test
+    public void testAddPointOperation()
+    {
+        Pipeline pipeline = new Pipeline();
+
+        pipeline.addPointOperation(PointOperations.GRAYSCALE)
+                .addPointOperation(PointOperations.NEGATIVE);
+        assertEquals(1, pipeline.getStageCount());
+
+        pipeline.addStage(img -> img.addSticker(new File("wow-sticker.png")))
+                .addPointOperation(PointOperations.NEGATIVE);
+        assertEquals(3, pipeline.getStageCount());
+    }
+
+    /**
+     * Test of run method, of class Pipeline.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRun() throws Exception
+    {
+        Image img1 = new Image(new File("mosley-bridge.jpg"));
+        Image img2 = new Image(new File("mosley-bridge.jpg"));
+
+        // One pass per operation.
+        img1.toGrayScale();
+        img1.negativeImage();
+        img1.cartoonify();
+
+        // All three operations fused into a single pass.
+        new Pipeline().addPointOperation(PointOperations.GRAYSCALE)
+                .addPointOperation(PointOperations.NEGATIVE)
+                .addPointOperation(PointOperations.palette(
+                        PaletteMap.forPalette(PixelColor.getPalette())))
+                .run(img2);
+
+        BufferedImage i1 = img1.getImage();
+        BufferedImage i2 = img2.getImage();
+
+        for (int i = 0; i < i1.getWidth(); i++)
+            for (int j = 0; j < i1.getHeight(); j++)
+                assertEquals(i1.getRGB(i, j), i2.getRGB(i, j));
+    }
+
+}
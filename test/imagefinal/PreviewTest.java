@@ -0,0 +1,93 @@
+package imagefinal;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.Image;
+import rathbunfinal.ImageComparison;
+import rathbunfinal.Preview;
+
+/**
+ *
+ * @author zach
+ */
+public class PreviewTest {
+
+    public PreviewTest()
+    {
+    }
+
+    /**
+     * Test of fit method, of class Preview.
+     */
+    @Test
+    public void testFit()
+    {
+        // The aspect ratio is kept, whichever side is the limit.
+        assertEquals(new Dimension(400, 183), Preview.fit(830, 380, 400, 400));
+        assertEquals(new Dimension(218, 100), Preview.fit(830, 380, 1000, 100));
+
+        // Small images are never made bigger.
+        assertEquals(new Dimension(830, 380), Preview.fit(830, 380, 2000, 2000));
+    }
+
+    /**
+     * Test of scale method, of class Preview.
+     */
+    @Test
+    public void testScale()
+    {
+        BufferedImage img = new BufferedImage(1000, 600, BufferedImage.TYPE_INT_RGB);
+        int[] stripes = new int[1000 * 600];
+
+        // Vertical stripes of black and white average out to gray.
+        for (int p = 0; p < stripes.length; p++)
+            stripes[p] = (p % 2 == 0) ? 0x000000 : 0xFFFFFF;
+        img.setRGB(0, 0, 1000, 600, stripes, 0, 1000);
+
+        BufferedImage preview = Preview.scale(img, 250, 250);
+
+        assertEquals(250, preview.getWidth());
+        assertEquals(150, preview.getHeight());
+
+        int gray = preview.getRGB(100, 100) & 0xFF;
+        assertTrue(gray >= 126 && gray <= 129);
+
+        assertSame(img, Preview.scale(img, 1000, 600));
+    }
+
+    /**
+     * Test of scale method with a subimage, of class Preview.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testScaleSubimage() throws Exception
+    {
+        BufferedImage img = new Image(new File("mosley-bridge.jpg")).getImage();
+        BufferedImage part = img.getSubimage(130, 70, 600, 300);
+        BufferedImage copy = new BufferedImage(600, 300, BufferedImage.TYPE_INT_RGB);
+
+        copy.getGraphics().drawImage(part, 0, 0, null);
+
+        assertTrue(ImageComparison.compare(Preview.scale(copy, 140, 140),
+                Preview.scale(part, 140, 140)).isIdentical());
+    }
+
+    /**
+     * Test of read method, of class Preview.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRead() throws Exception
+    {
+        File file = new File("mosley-bridge.jpg");
+        BufferedImage preview = Preview.read(file, 200, 200);
+
+        assertEquals(200, preview.getWidth());
+        assertEquals(92, preview.getHeight());
+        assertSame(preview, Preview.read(file, 200, 200));
+    }
+
+}
@@ -0,0 +1,114 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.Image;
+import rathbunfinal.RawImage;
+
+/**
+ *
+ * @author zach
+ */
+public class RawImageTest {
+
+    public RawImageTest()
+    {
+    }
+
+    /**
+     * Test of write and read methods, of class RawImage.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        for (String name : new String[] {"mosley-bridge.jpg", "wow-sticker.png"})
+        {
+            Image img = new Image(new File(name));
+            img.negativeImage();
+
+            File raw = File.createTempFile("roundtrip", "." + RawImage.EXTENSION);
+            raw.deleteOnExit();
+            RawImage.write(img.getImage(), raw);
+
+            // Every pixel comes back exactly, alpha channel included.
+            BufferedImage expected = img.getImage();
+            Image copy = new Image(raw);
+            BufferedImage actual = copy.getImage();
+
+            assertEquals(expected.getType(), actual.getType());
+            assertArrayEquals(rgbOf(expected), rgbOf(actual));
+            assertEquals(20 + 4L * expected.getWidth() * expected.getHeight(),
+                    raw.length());
+        }
+    }
+
+    /**
+     * Test that images that are not int rasters are converted on write, of
+     * class RawImage.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWriteConverts() throws Exception
+    {
+        BufferedImage jpeg = ImageIO.read(new File("mosley-bridge.jpg"));
+        File raw = File.createTempFile("converted", "." + RawImage.EXTENSION);
+        raw.deleteOnExit();
+
+        RawImage.write(jpeg, raw);
+        assertArrayEquals(rgbOf(jpeg), rgbOf(RawImage.read(raw)));
+    }
+
+    /**
+     * Test of write method with a subimage, of class RawImage.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWriteSubimage() throws Exception
+    {
+        BufferedImage whole = new Image(new File("mosley-bridge.jpg")).getImage();
+        BufferedImage part = whole.getSubimage(100, 50, 200, 120);
+        File raw = File.createTempFile("subimage", "." + RawImage.EXTENSION);
+        raw.deleteOnExit();
+
+        RawImage.write(part, raw);
+        assertArrayEquals(rgbOf(part), rgbOf(RawImage.read(raw)));
+    }
+
+    /**
+     * Test that damaged files are refused, of class RawImage.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testTruncated() throws Exception
+    {
+        File raw = File.createTempFile("truncated", "." + RawImage.EXTENSION);
+        raw.deleteOnExit();
+        RawImage.write(new Image(new File("wow-sticker.png")).getImage(), raw);
+
+        try (RandomAccessFile file = new RandomAccessFile(raw, "rw"))
+        {
+            file.setLength(file.length() - 4);
+        }
+
+        try
+        {
+            RawImage.read(raw);
+            fail("A truncated file was read");
+        } catch (IOException ex)
+        {
+            assertTrue(ex.getMessage().startsWith("Truncated"));
+        }
+    }
+
+    private static int[] rgbOf(BufferedImage img)
+    {
+        return img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+    }
+
+}
@@ -0,0 +1,111 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import rathbunfinal.Image;
+import rathbunfinal.ImageComparison;
+import rathbunfinal.PointOperations;
+import rathbunfinal.StripProcessor;
+
+/**
+ *
+ * @author zach
+ */
+public class StripProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public StripProcessorTest()
+    {
+    }
+
+    /**
+     * Test of process method, of class StripProcessor.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProcess() throws Exception
+    {
+        File output = folder.newFile("out.png");
+
+        // An odd strip height so the last strip is short.
+        new StripProcessor(7).process(new File("mosley-bridge.jpg"), output,
+                PointOperations.NEGATIVE, PointOperations.GRAYSCALE);
+
+        Image expected = new Image(new File("mosley-bridge.jpg"));
+        expected.negativeImage();
+        expected.toGrayScale();
+
+        BufferedImage i1 = ImageIO.read(output);
+        BufferedImage i2 = expected.getImage();
+
+        assertEquals(i2.getWidth(), i1.getWidth());
+        assertEquals(i2.getHeight(), i1.getHeight());
+
+        for (int i = 0; i < i1.getWidth(); i++)
+            for (int j = 0; j < i1.getHeight(); j++)
+                assertEquals(i2.getRGB(i, j), i1.getRGB(i, j));
+    }
+
+    /**
+     * Test of process method with PNG inputs, of class StripProcessor. A
+     * plain PNG is decoded in one pass, and an interlaced one a strip at a
+     * time, and both give the same rows.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProcessPng() throws Exception
+    {
+        BufferedImage photo = ImageIO.read(new File("mosley-bridge.jpg"));
+
+        for (boolean interlaced : new boolean[] {false, true})
+        {
+            File input = folder.newFile("in-" + interlaced + ".png");
+            File output = folder.newFile("out-" + interlaced + ".png");
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+            ImageWriteParam param = writer.getDefaultWriteParam();
+
+            param.setProgressiveMode(interlaced ? ImageWriteParam.MODE_DEFAULT
+                    : ImageWriteParam.MODE_DISABLED);
+
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(input))
+            {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(photo, null, null), param);
+            } finally
+            {
+                writer.dispose();
+            }
+
+            new StripProcessor(16).process(input, output, PointOperations.NEGATIVE);
+
+            Image expected = new Image(input);
+            expected.negativeImage();
+
+            assertTrue(ImageComparison.compare(expected.getImage(),
+                    ImageIO.read(output)).isIdentical());
+        }
+    }
+
+    /**
+     * Test that formats that cannot be streamed are refused.
+     * @throws java.lang.Exception
+     */
+    @Test(expected = java.io.IOException.class)
+    public void testJpegRefused() throws Exception
+    {
+        new StripProcessor(16).process(new File("mosley-bridge.jpg"),
+                folder.newFile("out.jpg"), PointOperations.NEGATIVE);
+    }
+
+}
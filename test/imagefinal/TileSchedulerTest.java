@@ -0,0 +1,96 @@
+package imagefinal;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rathbunfinal.Image;
+import rathbunfinal.TileScheduler;
+
+/**
+ *
+ * @author zach
+ */
+public class TileSchedulerTest {
+
+    public TileSchedulerTest()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        TileScheduler.setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Test of forEachBand method, of class TileScheduler.
+     */
+    @Test
+    public void testForEachBand()
+    {
+        TileScheduler scheduler = new TileScheduler(4);
+        AtomicIntegerArray visits = new AtomicIntegerArray(1000);
+
+        scheduler.forEachBand(1000, (first, last) ->
+        {
+            for (int j = first; j < last; j++)
+                visits.incrementAndGet(j);
+        });
+        scheduler.shutdown();
+
+        // Every row is visited exactly once.
+        for (int j = 0; j < visits.length(); j++)
+            assertEquals(1, visits.get(j));
+    }
+
+    /**
+     * Test that a scheduler still runs bands after the default one has been
+     * replaced, of class TileScheduler.
+     */
+    @Test
+    public void testSetParallelism()
+    {
+        TileScheduler.setParallelism(4);
+        TileScheduler old = TileScheduler.getDefault();
+        TileScheduler.setParallelism(2);
+
+        AtomicIntegerArray rows = new AtomicIntegerArray(1000);
+        old.forEachBand(rows.length(), (first, last) ->
+        {
+            for (int j = first; j < last; j++)
+                rows.incrementAndGet(j);
+        });
+
+        for (int j = 0; j < rows.length(); j++)
+            assertEquals(1, rows.get(j));
+    }
+
+    /**
+     * Test that the output does not depend on the number of threads.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDeterministic() throws Exception
+    {
+        TileScheduler.setParallelism(1);
+        Image img1 = new Image(new File("mosley-bridge.jpg"));
+        img1.negativeImage();
+        img1.cartoonify();
+
+        TileScheduler.setParallelism(8);
+        Image img2 = new Image(new File("mosley-bridge.jpg"));
+        img2.negativeImage();
+        img2.cartoonify();
+
+        BufferedImage i1 = img1.getImage();
+        BufferedImage i2 = img2.getImage();
+
+        for (int i = 0; i < i1.getWidth(); i++)
+            for (int j = 0; j < i1.getHeight(); j++)
+                assertEquals(i1.getRGB(i, j), i2.getRGB(i, j));
+    }
+
+}